@@ -0,0 +1,16 @@
+package org.example;
+
+import org.apache.spark.sql.execution.vectorized.WritableColumnVector;
+import org.apache.spark.sql.vectorized.ColumnVector;
+
+import java.io.Serializable;
+
+/**
+ * A scalar function evaluated a batch at a time over primitive column vectors instead of
+ * one boxed value per call like UDF1. Implementations loop over {@code numRows} and
+ * write one value (or null) per row into {@code output}. See {@link BatchUdfs}.
+ */
+@FunctionalInterface
+public interface BatchUdf extends Serializable {
+    void apply(ColumnVector[] inputs, WritableColumnVector output, int numRows);
+}
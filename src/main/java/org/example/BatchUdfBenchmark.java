@@ -0,0 +1,107 @@
+package org.example;
+
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.api.java.UDF1;
+import org.apache.spark.sql.api.java.UDF2;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.unsafe.Platform;
+import org.apache.spark.unsafe.types.UTF8String;
+
+import java.util.function.Supplier;
+
+import static org.apache.spark.sql.functions.call_udf;
+import static org.apache.spark.sql.functions.col;
+import static org.apache.spark.sql.functions.sum;
+
+/**
+ * Batch versions of the plusOne, strLen and oneArgFilter UDFs from JavaUserDefinedScalar,
+ * timed against the boxed UDF1/UDF2 registrations on spark.range(n).
+ * Usage: BatchUdfBenchmark [rows] (defaults to 1e8)
+ */
+public class BatchUdfBenchmark {
+
+    public static final BatchUdf PLUS_ONE = (inputs, output, numRows) -> {
+        for (int i = 0; i < numRows; i++) {
+            if (inputs[0].isNullAt(i)) {
+                output.putNull(i);
+            } else {
+                output.putLong(i, inputs[0].getLong(i) + 1);
+            }
+        }
+    };
+
+    public static final BatchUdf ONE_ARG_FILTER = (inputs, output, numRows) -> {
+        for (int i = 0; i < numRows; i++) {
+            if (inputs[0].isNullAt(i)) {
+                output.putNull(i);
+            } else {
+                output.putBoolean(i, inputs[0].getLong(i) > 5);
+            }
+        }
+    };
+
+    // Same length as String.length() in the boxed UDF, counted on the UTF-8 bytes without decoding to String
+    public static final BatchUdf STR_LEN = (inputs, output, numRows) -> {
+        for (int i = 0; i < numRows; i++) {
+            if (inputs[0].isNullAt(i) || inputs[1].isNullAt(i)) {
+                output.putNull(i);
+            } else {
+                output.putInt(i, utf16Length(inputs[0].getUTF8String(i)) + inputs[1].getInt(i));
+            }
+        }
+    };
+
+    // numChars() counts code points; characters outside the BMP are two UTF-16 chars, and their
+    // UTF-8 form is the only one starting with a 11110xxx byte
+    static int utf16Length(UTF8String s) {
+        int supplementary = 0;
+        for (int i = 0; i < s.numBytes(); i++) {
+            if ((Platform.getByte(s.getBaseObject(), s.getBaseOffset() + i) & 0xF8) == 0xF0) {
+                supplementary++;
+            }
+        }
+        return s.numChars() + supplementary;
+    }
+
+    public static void main(String[] args) {
+        long rows = args.length > 0 ? Long.parseLong(args[0]) : 100_000_000L;
+
+        SparkSession spark = SparkSession.builder()
+                .appName("BatchUdfBenchmark")
+                .master("local[*]")
+                .getOrCreate();
+
+        spark.udf().register("plusOne", (UDF1<Long, Long>) x -> x + 1, DataTypes.LongType);
+        spark.udf().register("oneArgFilter", (UDF1<Long, Boolean>) x -> x > 5, DataTypes.BooleanType);
+        spark.udf().register("strLen", (UDF2<String, Integer, Integer>) (s, x) -> s.length() + x, DataTypes.IntegerType);
+
+        Dataset<Row> range = spark.range(rows).toDF();
+        Dataset<Row> strings = range.select(col("id"), col("id").cast("string").as("s"), col("id").cast("int").as("x"));
+
+        System.out.println("=============== plusOne ===============");
+        time("boxed UDF1", () -> range.select(sum(call_udf("plusOne", col("id")))).first().get(0));
+        time("batch", () -> BatchUdfs.withColumn(range, "plusOne", DataTypes.LongType, PLUS_ONE, "id")
+                .select(sum("plusOne")).first().get(0));
+        time("native expression", () -> range.select(sum(col("id").plus(1))).first().get(0));
+
+        System.out.println("=============== oneArgFilter ===============");
+        time("boxed UDF1", () -> range.where(call_udf("oneArgFilter", col("id"))).count());
+        time("batch", () -> BatchUdfs.withColumn(range, "keep", DataTypes.BooleanType, ONE_ARG_FILTER, "id")
+                .where(col("keep")).count());
+
+        System.out.println("=============== strLen ===============");
+        time("boxed UDF2", () -> strings.select(sum(call_udf("strLen", col("s"), col("x")))).first().get(0));
+        time("batch", () -> BatchUdfs.withColumn(strings, "strLen", DataTypes.IntegerType, STR_LEN, "s", "x")
+                .select(sum("strLen")).first().get(0));
+
+        spark.stop();
+    }
+
+    private static void time(String label, Supplier<Object> action) {
+        long start = System.nanoTime();
+        Object result = action.get();
+        System.out.printf("%-20s %8d ms  (result %s)%n", label, (System.nanoTime() - start) / 1_000_000, result);
+    }
+}
@@ -0,0 +1,223 @@
+package org.example;
+
+import org.apache.spark.rdd.RDD;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.catalyst.InternalRow;
+import org.apache.spark.sql.catalyst.expressions.JoinedRow;
+import org.apache.spark.sql.execution.ColumnarToRowExec;
+import org.apache.spark.sql.execution.SparkPlan;
+import org.apache.spark.sql.execution.WholeStageCodegenExec;
+import org.apache.spark.sql.execution.vectorized.OnHeapColumnVector;
+import org.apache.spark.sql.execution.vectorized.WritableColumnVector;
+import org.apache.spark.sql.types.DataType;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.StructType;
+import org.apache.spark.sql.vectorized.ColumnVector;
+import org.apache.spark.sql.vectorized.ColumnarBatch;
+
+import java.util.Iterator;
+
+/**
+ * Runs a {@link BatchUdf} over a DataFrame. When the DataFrame is a columnar scan (vectorized Parquet
+ * or ORC, or a cached table), the function runs directly on the scan's column vectors and its output
+ * vector is appended to each batch, so no value is copied on the way in. Otherwise rows are read as
+ * InternalRow (no Row/boxing), the argument columns are copied into on-heap vectors
+ * {@code batchSize} rows at a time, and each output value is joined back onto its row.
+ * Argument and result columns must be flat primitive, date, timestamp or string columns; other
+ * columns are passed through untouched.
+ */
+public class BatchUdfs {
+
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+
+    public static Dataset<Row> withColumn(Dataset<Row> df, String name, DataType returnType,
+                                          BatchUdf udf, String... inputColumns) {
+        return withColumn(df, name, returnType, DEFAULT_BATCH_SIZE, udf, inputColumns);
+    }
+
+    // batchSize applies to row input only; columnar input keeps the scan's batches
+    public static Dataset<Row> withColumn(Dataset<Row> df, String name, DataType returnType, int batchSize,
+                                          BatchUdf udf, String... inputColumns) {
+        StructType inputSchema = df.schema();
+        int[] argOrdinals = new int[inputColumns.length];
+        DataType[] argTypes = new DataType[inputColumns.length];
+        for (int i = 0; i < inputColumns.length; i++) {
+            argOrdinals[i] = inputSchema.fieldIndex(inputColumns[i]);
+            argTypes[i] = inputSchema.fields()[argOrdinals[i]].dataType();
+            checkSupported(argTypes[i]);
+        }
+        checkSupported(returnType);
+
+        StructType outputSchema = inputSchema.add(name, returnType, true);
+        SparkPlan columnar = columnarInput(df.queryExecution().executedPlan());
+        RDD<InternalRow> rows = columnar != null
+                ? columnar.executeColumnar().toJavaRDD()
+                        .mapPartitions(it -> new ColumnarInput(it, returnType, udf, argOrdinals))
+                        .rdd()
+                : df.queryExecution().toRdd().toJavaRDD()
+                        .mapPartitions(it -> new RowInput(it, argTypes, returnType, batchSize, udf, argOrdinals))
+                        .rdd();
+        return ColumnarRows.toDataFrame(df.sparkSession(), rows, outputSchema);
+    }
+
+    // The columnar plan under the top-level ColumnarToRow, whose batches hold exactly the DataFrame's columns
+    private static SparkPlan columnarInput(SparkPlan plan) {
+        if (plan instanceof WholeStageCodegenExec codegen) {
+            plan = codegen.child();
+        }
+        return plan instanceof ColumnarToRowExec toRow && toRow.child().supportsColumnar() ? toRow.child() : null;
+    }
+
+    private static void checkSupported(DataType type) {
+        if (!(type.equals(DataTypes.BooleanType) || type.equals(DataTypes.ByteType)
+                || type.equals(DataTypes.ShortType) || type.equals(DataTypes.IntegerType)
+                || type.equals(DataTypes.LongType) || type.equals(DataTypes.FloatType)
+                || type.equals(DataTypes.DoubleType) || type.equals(DataTypes.DateType)
+                || type.equals(DataTypes.TimestampType) || type.equals(DataTypes.StringType))) {
+            throw new IllegalArgumentException("Unsupported type for batch UDF: " + type.simpleString());
+        }
+    }
+
+    private static void copy(InternalRow row, int ordinal, DataType type, WritableColumnVector vector, int rowId) {
+        if (row.isNullAt(ordinal)) {
+            vector.putNull(rowId);
+        } else if (type.equals(DataTypes.LongType) || type.equals(DataTypes.TimestampType)) {
+            vector.putLong(rowId, row.getLong(ordinal));
+        } else if (type.equals(DataTypes.IntegerType) || type.equals(DataTypes.DateType)) {
+            vector.putInt(rowId, row.getInt(ordinal));
+        } else if (type.equals(DataTypes.DoubleType)) {
+            vector.putDouble(rowId, row.getDouble(ordinal));
+        } else if (type.equals(DataTypes.FloatType)) {
+            vector.putFloat(rowId, row.getFloat(ordinal));
+        } else if (type.equals(DataTypes.ShortType)) {
+            vector.putShort(rowId, row.getShort(ordinal));
+        } else if (type.equals(DataTypes.ByteType)) {
+            vector.putByte(rowId, row.getByte(ordinal));
+        } else if (type.equals(DataTypes.BooleanType)) {
+            vector.putBoolean(rowId, row.getBoolean(ordinal));
+        } else {
+            vector.putByteArray(rowId, row.getUTF8String(ordinal).getBytes());
+        }
+    }
+
+    // Appends the output vector to each batch of the scan
+    private static class ColumnarInput extends ColumnarRows.BatchIterator {
+        private final Iterator<ColumnarBatch> input;
+        private final BatchUdf udf;
+        private final int[] argOrdinals;
+        private final WritableColumnVector output;
+
+        ColumnarInput(Iterator<ColumnarBatch> input, DataType returnType, BatchUdf udf, int[] argOrdinals) {
+            this.input = input;
+            this.udf = udf;
+            this.argOrdinals = argOrdinals;
+            this.output = new OnHeapColumnVector(DEFAULT_BATCH_SIZE, returnType);
+        }
+
+        @Override
+        protected Iterator<InternalRow> nextBatch() {
+            if (!input.hasNext()) {
+                return null;
+            }
+            ColumnarBatch batch = input.next();
+            int numRows = batch.numRows();
+            ColumnVector[] columns = new ColumnVector[batch.numCols() + 1];
+            for (int i = 0; i < batch.numCols(); i++) {
+                columns[i] = batch.column(i);
+            }
+            ColumnVector[] args = new ColumnVector[argOrdinals.length];
+            for (int i = 0; i < argOrdinals.length; i++) {
+                args[i] = columns[argOrdinals[i]];
+            }
+            output.reset();
+            output.reserve(numRows);
+            udf.apply(args, output, numRows);
+            columns[batch.numCols()] = output;
+            // Not closed: the input vectors belong to the scan, which reuses them for its next batch
+            ColumnarBatch withOutput = new ColumnarBatch(columns, numRows);
+            return withOutput.rowIterator();
+        }
+
+        @Override
+        protected void close() {
+            output.close();
+        }
+    }
+
+    // Copies the argument columns of batchSize rows into vectors and joins each output value back onto its row
+    private static class RowInput extends ColumnarRows.BatchIterator {
+        private final Iterator<InternalRow> input;
+        private final DataType[] argTypes;
+        private final int[] argOrdinals;
+        private final int batchSize;
+        private final BatchUdf udf;
+        private final WritableColumnVector[] args;
+        private final WritableColumnVector output;
+        private final ColumnarBatch outputBatch;
+        private final InternalRow[] rows;
+        private final JoinedRow joined = new JoinedRow();
+
+        RowInput(Iterator<InternalRow> input, DataType[] argTypes, DataType returnType, int batchSize,
+                 BatchUdf udf, int[] argOrdinals) {
+            this.input = input;
+            this.argTypes = argTypes;
+            this.argOrdinals = argOrdinals;
+            this.batchSize = batchSize;
+            this.udf = udf;
+            this.args = new WritableColumnVector[argTypes.length];
+            for (int i = 0; i < argTypes.length; i++) {
+                args[i] = new OnHeapColumnVector(batchSize, argTypes[i]);
+            }
+            this.output = new OnHeapColumnVector(batchSize, returnType);
+            this.outputBatch = new ColumnarBatch(new ColumnVector[]{output});
+            this.rows = new InternalRow[batchSize];
+        }
+
+        @Override
+        protected Iterator<InternalRow> nextBatch() {
+            if (!input.hasNext()) {
+                return null;
+            }
+            for (WritableColumnVector arg : args) {
+                arg.reset();
+            }
+            output.reset();
+            int numRows = 0;
+            while (numRows < batchSize && input.hasNext()) {
+                // The input row is reused by its producer, so keep a copy until the output is joined
+                InternalRow row = input.next().copy();
+                for (int i = 0; i < args.length; i++) {
+                    copy(row, argOrdinals[i], argTypes[i], args[i], numRows);
+                }
+                rows[numRows++] = row;
+            }
+            udf.apply(args, output, numRows);
+            outputBatch.setNumRows(numRows);
+            int size = numRows;
+            return new Iterator<>() {
+                private int next;
+
+                @Override
+                public boolean hasNext() {
+                    return next < size;
+                }
+
+                @Override
+                public InternalRow next() {
+                    InternalRow row = joined.apply(rows[next], outputBatch.getRow(next));
+                    rows[next++] = null;
+                    return row;
+                }
+            };
+        }
+
+        @Override
+        protected void close() {
+            for (WritableColumnVector arg : args) {
+                arg.close();
+            }
+            output.close();
+        }
+    }
+}
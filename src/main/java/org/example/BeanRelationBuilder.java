@@ -0,0 +1,234 @@
+package org.example;
+
+import org.apache.spark.SparkFiles;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.examples.sql.hive.JavaSparkHiveExample;
+import org.apache.spark.rdd.RDD;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Encoders;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.catalyst.InternalRow;
+import org.apache.spark.sql.catalyst.encoders.ExpressionEncoder;
+import org.apache.spark.sql.catalyst.expressions.UnsafeRow;
+import org.apache.spark.sql.types.StructType;
+import org.apache.spark.unsafe.Platform;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.ref.Cleaner;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Builds a DataFrame from an {@link Iterator} or {@link Stream} of beans without holding them all on the
+ * driver, as {@code spark.createDataFrame(list, beanClass)} does: there the whole list has to exist,
+ * every property is read through reflection and the rows end up in one local relation.
+ * Here each bean goes through the bean encoder's generated serializer into an UnsafeRow, and the rows
+ * are packed into chunks of about {@code chunkBytes}, one partition per chunk. Chunks stay in memory
+ * until they add up to {@code memoryBytes}; later chunks are spilled to local files which are
+ * shipped to executors with {@code addFile}; see {@link #spill} for how long they live.
+ */
+public class BeanRelationBuilder<T> {
+
+    public static final int DEFAULT_CHUNK_BYTES = 4 * 1024 * 1024;
+    public static final long DEFAULT_MEMORY_BYTES = 64L * 1024 * 1024;
+
+    private static final Cleaner cleaner = Cleaner.create();
+
+    // Rows of one partition, either inline or in a file added with addFile
+    private record Chunk(byte[] rows, String file) implements Serializable {
+    }
+
+    private final SparkSession spark;
+    private final ExpressionEncoder<T> encoder;
+    private final int chunkBytes;
+    private final long memoryBytes;
+    private final LongAdder chunks = new LongAdder();
+    private final LongAdder spilledChunks = new LongAdder();
+    private final LongAdder spilledBytes = new LongAdder();
+    private Path spillDir;
+
+    public BeanRelationBuilder(SparkSession spark, Class<T> beanClass) {
+        this(spark, beanClass, DEFAULT_CHUNK_BYTES, DEFAULT_MEMORY_BYTES);
+    }
+
+    public BeanRelationBuilder(SparkSession spark, Class<T> beanClass, int chunkBytes, long memoryBytes) {
+        this.spark = spark;
+        this.encoder = (ExpressionEncoder<T>) Encoders.bean(beanClass);
+        this.chunkBytes = chunkBytes;
+        this.memoryBytes = memoryBytes;
+    }
+
+    public Dataset<Row> createDataFrame(Stream<T> beans) throws IOException {
+        try (beans) {
+            return createDataFrame(beans.iterator());
+        }
+    }
+
+    public Dataset<Row> createDataFrame(Iterator<T> beans) throws IOException {
+        ExpressionEncoder.Serializer<T> serializer = encoder.createSerializer();
+        List<Chunk> parts = new ArrayList<>();
+        long inMemory = 0;
+        List<Path> spilled = new ArrayList<>();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(chunkBytes);
+        DataOutputStream out = new DataOutputStream(buffer);
+        byte[] scratch = new byte[4096];
+        while (beans.hasNext()) {
+            UnsafeRow row = (UnsafeRow) serializer.apply(beans.next());
+            out.writeInt(row.getSizeInBytes());
+            row.writeToStream(out, scratch);
+            if (buffer.size() >= chunkBytes || !beans.hasNext()) {
+                byte[] rows = buffer.toByteArray();
+                buffer.reset();
+                if (inMemory + rows.length <= memoryBytes) {
+                    parts.add(new Chunk(rows, null));
+                    inMemory += rows.length;
+                } else {
+                    Path file = spill(rows);
+                    spilled.add(file);
+                    parts.add(new Chunk(null, file.getFileName().toString()));
+                }
+                chunks.increment();
+            }
+        }
+
+        StructType schema = encoder.schema();
+        int numFields = schema.size();
+        RDD<InternalRow> rows = JavaSparkContext.fromSparkContext(spark.sparkContext())
+                .parallelize(parts, Math.max(1, parts.size()))
+                .mapPartitions(it -> it.hasNext()
+                        ? new RowIterator(read(it.next()), numFields)
+                        : Collections.<InternalRow>emptyIterator())
+                .rdd();
+        if (!spilled.isEmpty()) {
+            // The plan's LogicalRDD holds this RDD, so every Dataset derived from the result references it
+            cleaner.register(rows, deleteAll(spilled));
+        }
+        return ColumnarRows.toDataFrame(spark, rows, schema);
+    }
+
+    /**
+     * Writes one chunk to a local file and ships it with {@code addFile}. The driver's file is deleted
+     * once the DataFrame and every Dataset derived from it are garbage collected (or at JVM exit).
+     * The copies {@code addFile} fetched into each executor's and the driver's SparkFiles directory
+     * stay until the application ends, since Spark has no way to remove an added file; an application
+     * that builds many spilling DataFrames should size {@code memoryBytes} accordingly.
+     */
+    private Path spill(byte[] rows) throws IOException {
+        if (spillDir == null) {
+            spillDir = Files.createTempDirectory("bean-relation");
+            spillDir.toFile().deleteOnExit();
+        }
+        // addFile serves files by name, so names must be unique across builders
+        Path file = spillDir.resolve("chunk-" + UUID.randomUUID() + ".bin");
+        Files.write(file, rows);
+        file.toFile().deleteOnExit();
+        spark.sparkContext().addFile(file.toString());
+        spilledChunks.increment();
+        spilledBytes.add(rows.length);
+        return file;
+    }
+
+    // Static so the cleanup action does not keep the builder or the RDD reachable
+    private static Runnable deleteAll(List<Path> files) {
+        return () -> {
+            for (Path file : files) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException ignored) {
+                    // Still registered with deleteOnExit
+                }
+            }
+        };
+    }
+
+    private static byte[] read(Chunk chunk) throws IOException {
+        return chunk.rows() != null ? chunk.rows() : Files.readAllBytes(new File(SparkFiles.get(chunk.file())).toPath());
+    }
+
+    public long chunks() {
+        return chunks.sum();
+    }
+
+    public long spilledChunks() {
+        return spilledChunks.sum();
+    }
+
+    public long spilledBytes() {
+        return spilledBytes.sum();
+    }
+
+    // Points one reused UnsafeRow at each row of a chunk; RDDScanExec copies it before asking for the next
+    private static class RowIterator implements Iterator<InternalRow> {
+        private final byte[] bytes;
+        private final UnsafeRow row;
+        private int offset;
+
+        RowIterator(byte[] bytes, int numFields) {
+            this.bytes = bytes;
+            this.row = new UnsafeRow(numFields);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return offset < bytes.length;
+        }
+
+        @Override
+        public InternalRow next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            // Written by DataOutputStream.writeInt, so big-endian
+            int size = (bytes[offset] & 0xff) << 24 | (bytes[offset + 1] & 0xff) << 16
+                    | (bytes[offset + 2] & 0xff) << 8 | (bytes[offset + 3] & 0xff);
+            row.pointTo(bytes, Platform.BYTE_ARRAY_OFFSET + offset + 4, size);
+            offset += 4 + size;
+            return row;
+        }
+    }
+
+    // Usage: BeanRelationBuilder [rows]; streams JavaSparkHiveExample records and compares with createDataFrame
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        SparkSession spark = SparkSession.builder()
+                .appName("BeanRelationBuilder")
+                .master("local[*]")
+                .getOrCreate();
+        BeanRelationBuilder<JavaSparkHiveExample.Record> builder =
+                new BeanRelationBuilder<>(spark, JavaSparkHiveExample.Record.class);
+
+        long start = System.nanoTime();
+        long count = builder.createDataFrame(IntStream.range(0, rows).mapToObj(BeanRelationBuilder::record)).count();
+        System.out.printf("streamed:        %d rows in %d ms, %d chunks, %d spilled (%d bytes)%n",
+                count, (System.nanoTime() - start) / 1_000_000,
+                builder.chunks(), builder.spilledChunks(), builder.spilledBytes());
+
+        start = System.nanoTime();
+        List<JavaSparkHiveExample.Record> list = new ArrayList<>(rows);
+        IntStream.range(0, rows).mapToObj(BeanRelationBuilder::record).forEach(list::add);
+        count = spark.createDataFrame(list, JavaSparkHiveExample.Record.class).count();
+        System.out.printf("createDataFrame: %d rows in %d ms%n", count, (System.nanoTime() - start) / 1_000_000);
+        spark.stop();
+    }
+
+    private static JavaSparkHiveExample.Record record(int key) {
+        JavaSparkHiveExample.Record record = new JavaSparkHiveExample.Record();
+        record.setKey(key);
+        record.setValue("val_" + key);
+        return record;
+    }
+}
@@ -0,0 +1,172 @@
+package org.example;
+
+import org.apache.spark.sql.catalyst.expressions.AttributeReference;
+import org.apache.spark.sql.catalyst.expressions.EqualNullSafe;
+import org.apache.spark.sql.catalyst.expressions.EqualTo;
+import org.apache.spark.sql.catalyst.expressions.Expression;
+import org.apache.spark.sql.catalyst.expressions.In;
+import org.apache.spark.sql.catalyst.expressions.InSet;
+import org.apache.spark.sql.catalyst.expressions.Literal;
+import org.apache.spark.sql.execution.FileSourceScanExec;
+import org.apache.spark.sql.execution.QueryExecution;
+import org.apache.spark.sql.execution.SparkPlan;
+import org.apache.spark.sql.util.QueryExecutionListener;
+import scala.collection.JavaConverters;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Query listener that counts, per file-based table and column, how many successful queries filtered the
+ * column by equality ({@code =}, {@code <=>}, {@code IN}), which are the only predicates bloom filters
+ * can answer. Register it with {@code spark.listenerManager().register(advisor)} and, after a
+ * representative workload, {@link #recommend(int)} lists the columns worth a bloom filter and
+ * {@link #writeOptions} turns them into the Parquet or ORC write options.
+ * Partition columns are left out since partition pruning already handles them.
+ */
+public class BloomFilterAdvisor implements QueryExecutionListener {
+
+    public record Recommendation(String table, String format, String column, long equalityQueries) {
+    }
+
+    // table -> column -> number of queries
+    private final Map<String, Map<String, LongAdder>> counts = new ConcurrentHashMap<>();
+    private final Map<String, String> formats = new ConcurrentHashMap<>();
+    // Queries seen so far, successful or not; guarded by this
+    private long queries;
+
+    @Override
+    public void onSuccess(String funcName, QueryExecution qe, long durationNs) {
+        scans(qe.sparkPlan(), scan -> {
+            String table = JavaConverters.seqAsJavaList(scan.relation().location().rootPaths()).stream()
+                    .map(Object::toString)
+                    .sorted()
+                    .collect(Collectors.joining(","));
+            formats.put(table, scan.relation().fileFormat().toString().toLowerCase());
+            // A column counts once per query however often it is compared
+            Set<String> columns = new HashSet<>();
+            for (Expression filter : JavaConverters.seqAsJavaList(scan.dataFilters())) {
+                equalityColumns(filter, columns);
+            }
+            Map<String, LongAdder> byColumn = counts.computeIfAbsent(table, t -> new ConcurrentHashMap<>());
+            columns.forEach(column -> byColumn.computeIfAbsent(column, c -> new LongAdder()).increment());
+        });
+        queryDone();
+    }
+
+    @Override
+    public void onFailure(String funcName, QueryExecution qe, Exception exception) {
+        queryDone();
+    }
+
+    private synchronized void queryDone() {
+        queries++;
+        notifyAll();
+    }
+
+    /**
+     * Waits until the listener has seen {@code count} queries since it was created. Listeners are called
+     * asynchronously, so a query's {@code count()} or {@code collect()} returns before it is counted.
+     */
+    public synchronized boolean awaitQueries(long count, Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (queries < count) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+
+    private static void scans(SparkPlan plan, Consumer<FileSourceScanExec> action) {
+        if (plan instanceof FileSourceScanExec scan) {
+            action.accept(scan);
+        }
+        for (SparkPlan child : JavaConverters.seqAsJavaList(plan.children())) {
+            scans(child, action);
+        }
+    }
+
+    private static void equalityColumns(Expression e, Set<String> columns) {
+        if (e instanceof EqualTo || e instanceof EqualNullSafe) {
+            Expression left = e.children().apply(0);
+            Expression right = e.children().apply(1);
+            if (left instanceof AttributeReference a && right instanceof Literal) {
+                columns.add(a.name());
+            } else if (right instanceof AttributeReference a && left instanceof Literal) {
+                columns.add(a.name());
+            }
+        } else if (e instanceof In in && in.value() instanceof AttributeReference a && in.inSetConvertible()) {
+            columns.add(a.name());
+        } else if (e instanceof InSet in && in.child() instanceof AttributeReference a) {
+            columns.add(a.name());
+        }
+        // And/Or/Not: bloom filters still help with the equalities inside them
+        for (Expression child : JavaConverters.seqAsJavaList(e.children())) {
+            equalityColumns(child, columns);
+        }
+    }
+
+    public Map<String, Map<String, Long>> counts() {
+        Map<String, Map<String, Long>> snapshot = new LinkedHashMap<>();
+        counts.forEach((table, byColumn) -> {
+            Map<String, Long> columns = new LinkedHashMap<>();
+            byColumn.forEach((column, n) -> columns.put(column, n.sum()));
+            snapshot.put(table, columns);
+        });
+        return snapshot;
+    }
+
+    // Columns filtered by equality in at least minQueries queries, most frequent first
+    public List<Recommendation> recommend(int minQueries) {
+        List<Recommendation> recommendations = new ArrayList<>();
+        counts().forEach((table, byColumn) -> byColumn.forEach((column, n) -> {
+            if (n >= minQueries) {
+                recommendations.add(new Recommendation(table, formats.get(table), column, n));
+            }
+        }));
+        recommendations.sort(Comparator.comparingLong(Recommendation::equalityQueries).reversed()
+                .thenComparing(Recommendation::table)
+                .thenComparing(Recommendation::column));
+        return recommendations;
+    }
+
+    // Options for rewriting the table, e.g. df.write().options(advisor.writeOptions(...)).parquet(path)
+    public static Map<String, String> writeOptions(String format, List<String> columns) {
+        Map<String, String> options = new LinkedHashMap<>();
+        if (format.equals("orc")) {
+            options.put("orc.bloom.filter.columns", String.join(",", columns));
+        } else if (format.equals("parquet")) {
+            for (String column : columns) {
+                options.put("parquet.bloom.filter.enabled#" + column, "true");
+            }
+        } else {
+            throw new IllegalArgumentException("No bloom filter support for format " + format);
+        }
+        return options;
+    }
+
+    public Map<String, String> writeOptions(String table, int minQueries) {
+        List<String> columns = new ArrayList<>();
+        String format = formats.get(table);
+        for (Recommendation recommendation : recommend(minQueries)) {
+            if (recommendation.table().equals(table)) {
+                columns.add(recommendation.column());
+            }
+        }
+        return format == null || columns.isEmpty() ? Map.of() : writeOptions(format, columns);
+    }
+}
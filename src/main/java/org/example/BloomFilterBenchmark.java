@@ -0,0 +1,80 @@
+package org.example;
+
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SaveMode;
+import org.apache.spark.sql.SparkSession;
+
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.spark.sql.functions.col;
+import static org.apache.spark.sql.functions.concat;
+import static org.apache.spark.sql.functions.lit;
+import static org.apache.spark.sql.functions.rand;
+
+/**
+ * Writes a users table with a high-cardinality {@code favorite_color} as Parquet and ORC, with and
+ * without bloom filters on that column, runs equality lookups against each copy through a
+ * {@link BloomFilterAdvisor}, and prints time, row groups/stripes scanned versus skipped
+ * ({@link BloomFilterScans}) and the advisor's recommendations.
+ * Usage: BloomFilterBenchmark [rows] (defaults to 20M)
+ */
+public class BloomFilterBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        long rows = args.length > 0 ? Long.parseLong(args[0]) : 20_000_000L;
+        String base = Files.createTempDirectory("bloom-filter-benchmark").toString();
+
+        SparkSession spark = SparkSession.builder()
+                .appName("BloomFilterBenchmark")
+                .master("local[*]")
+                .getOrCreate();
+        BloomFilterAdvisor advisor = new BloomFilterAdvisor();
+        spark.listenerManager().register(advisor);
+
+        // Random colors, so min/max statistics of every row group cover almost the whole range
+        Dataset<Row> users = spark.range(rows)
+                .select(concat(lit("user-"), col("id")).as("name"),
+                        concat(lit("color-"), rand(1).multiply(rows / 10).cast("long")).as("favorite_color"),
+                        rand(2).multiply(100).cast("int").as("age"));
+
+        write(users, "parquet", base + "/plain.parquet", Map.of());
+        write(users, "parquet", base + "/bloom.parquet", BloomFilterAdvisor.writeOptions("parquet", List.of("favorite_color")));
+        write(users, "orc", base + "/plain.orc", Map.of());
+        write(users, "orc", base + "/bloom.orc", BloomFilterAdvisor.writeOptions("orc", List.of("favorite_color")));
+
+        for (String color : new String[]{"color-42", "color-123456", "no-such-color"}) {
+            for (String table : new String[]{"plain.parquet", "bloom.parquet", "plain.orc", "bloom.orc"}) {
+                String format = table.substring(table.indexOf('.') + 1);
+                String path = base + "/" + table;
+                long start = System.nanoTime();
+                long count = spark.read().format(format).load(path).where(col("favorite_color").equalTo(color)).count();
+                long ms = (System.nanoTime() - start) / 1_000_000;
+                BloomFilterScans.ScanStats stats = format.equals("orc")
+                        ? BloomFilterScans.orc(spark, path, "favorite_color", color)
+                        : BloomFilterScans.parquet(spark, path, "favorite_color", color);
+                System.out.printf("%-14s %d rows in %5d ms | %s%n", table, count, ms, stats);
+            }
+        }
+
+        // A few range queries, which bloom filters cannot answer and the advisor ignores
+        spark.read().parquet(base + "/plain.parquet").where(col("age").gt(90)).count();
+        spark.read().parquet(base + "/plain.parquet").where(col("name").equalTo("user-7")).count();
+
+        // 4 writes, 12 lookups and the 2 range queries
+        advisor.awaitQueries(18, Duration.ofMinutes(1));
+        for (BloomFilterAdvisor.Recommendation recommendation : advisor.recommend(2)) {
+            System.out.println(recommendation);
+        }
+        spark.stop();
+    }
+
+    private static void write(Dataset<Row> df, String format, String path, Map<String, String> options) {
+        long start = System.nanoTime();
+        df.write().mode(SaveMode.Overwrite).format(format).options(options).save(path);
+        System.out.printf("write %-45s %d ms%n", path, (System.nanoTime() - start) / 1_000_000);
+    }
+}
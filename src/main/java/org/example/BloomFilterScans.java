@@ -0,0 +1,232 @@
+package org.example;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.io.sarg.PredicateLeaf;
+import org.apache.hadoop.hive.ql.io.sarg.SearchArgument;
+import org.apache.hadoop.hive.ql.io.sarg.SearchArgumentFactory;
+import org.apache.orc.ColumnStatistics;
+import org.apache.orc.DoubleColumnStatistics;
+import org.apache.orc.IntegerColumnStatistics;
+import org.apache.orc.OrcFile;
+import org.apache.orc.OrcProto;
+import org.apache.orc.Reader;
+import org.apache.orc.RecordReader;
+import org.apache.orc.StringColumnStatistics;
+import org.apache.orc.StripeInformation;
+import org.apache.orc.StripeStatistics;
+import org.apache.orc.TypeDescription;
+import org.apache.orc.impl.ColumnStatisticsImpl;
+import org.apache.orc.impl.OrcIndex;
+import org.apache.orc.impl.RecordReaderImpl;
+import org.apache.parquet.HadoopReadOptions;
+import org.apache.parquet.ParquetReadOptions;
+import org.apache.parquet.filter2.compat.FilterCompat;
+import org.apache.parquet.filter2.predicate.FilterApi;
+import org.apache.parquet.filter2.predicate.FilterPredicate;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.util.HadoopInputFile;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.spark.sql.SparkSession;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reports how many Parquet row groups or ORC stripes an equality predicate has to read, using the same
+ * readers and filter levels Spark's scans use, so the effect of {@code parquet.bloom.filter.enabled#col}
+ * and {@code orc.bloom.filter.columns} can be measured per query instead of guessed.
+ * Each report also says how many would be read without bloom filters: for Parquet the footer statistics
+ * and dictionaries alone, for ORC the stripe statistics and row index min/max alone.
+ */
+public class BloomFilterScans {
+
+    public record ScanStats(String format, String column, Object value, int files, long total,
+                            long scannedWithoutBloom, long scanned) {
+
+        public long skipped() {
+            return total - scanned;
+        }
+
+        // Row groups or stripes that only the bloom filters ruled out
+        public long skippedByBloom() {
+            return scannedWithoutBloom - scanned;
+        }
+
+        @Override
+        public String toString() {
+            String unit = format.equals("orc") ? "stripes" : "row groups";
+            return String.format("%s %s = %s: %d files, %d %s, scanned %d, skipped %d (%d by bloom filters, %d scanned without them)",
+                    format, column, value, files, total, unit, scanned, skipped(), skippedByBloom(), scannedWithoutBloom);
+        }
+    }
+
+    public static ScanStats parquet(SparkSession spark, String path, String column, Object value) throws IOException {
+        Configuration conf = spark.sparkContext().hadoopConfiguration();
+        List<LocatedFileStatus> files = dataFiles(conf, path, ".parquet");
+        long total = 0;
+        long withoutBloom = 0;
+        long scanned = 0;
+        FilterPredicate predicate = null;
+        for (LocatedFileStatus file : files) {
+            if (predicate == null) {
+                try (ParquetFileReader reader = ParquetFileReader.open(HadoopInputFile.fromStatus(file, conf))) {
+                    predicate = parquetEquals(reader.getFileMetaData().getSchema().getType(column).asPrimitiveType(), column, value);
+                }
+            }
+            try (ParquetFileReader reader = ParquetFileReader.open(HadoopInputFile.fromStatus(file, conf),
+                    parquetOptions(conf, predicate, false))) {
+                total += reader.getFooter().getBlocks().size();
+                withoutBloom += reader.getRowGroups().size();
+            }
+            try (ParquetFileReader reader = ParquetFileReader.open(HadoopInputFile.fromStatus(file, conf),
+                    parquetOptions(conf, predicate, true))) {
+                scanned += reader.getRowGroups().size();
+            }
+        }
+        return new ScanStats("parquet", column, value, files.size(), total, withoutBloom, scanned);
+    }
+
+    private static ParquetReadOptions parquetOptions(Configuration conf, FilterPredicate predicate, boolean bloom) {
+        return HadoopReadOptions.builder(conf)
+                .withRecordFilter(FilterCompat.get(predicate))
+                .useStatsFilter(true)
+                .useDictionaryFilter(true)
+                .useBloomFilter(bloom)
+                .build();
+    }
+
+    private static FilterPredicate parquetEquals(PrimitiveType type, String column, Object value) {
+        return switch (type.getPrimitiveTypeName()) {
+            case BINARY -> FilterApi.eq(FilterApi.binaryColumn(column), Binary.fromString(value.toString()));
+            case INT32 -> FilterApi.eq(FilterApi.intColumn(column), ((Number) value).intValue());
+            case INT64 -> FilterApi.eq(FilterApi.longColumn(column), ((Number) value).longValue());
+            case DOUBLE -> FilterApi.eq(FilterApi.doubleColumn(column), ((Number) value).doubleValue());
+            case FLOAT -> FilterApi.eq(FilterApi.floatColumn(column), ((Number) value).floatValue());
+            case BOOLEAN -> FilterApi.eq(FilterApi.booleanColumn(column), (Boolean) value);
+            default -> throw new IllegalArgumentException("Unsupported Parquet type for " + column + ": " + type);
+        };
+    }
+
+    public static ScanStats orc(SparkSession spark, String path, String column, Object value) throws IOException {
+        Configuration conf = spark.sparkContext().hadoopConfiguration();
+        List<LocatedFileStatus> files = dataFiles(conf, path, ".orc");
+        long total = 0;
+        long withoutBloom = 0;
+        long scanned = 0;
+        for (LocatedFileStatus file : files) {
+            try (Reader reader = OrcFile.createReader(file.getPath(), OrcFile.readerOptions(conf).filesystem(file.getPath().getFileSystem(conf)))) {
+                TypeDescription schema = reader.getSchema();
+                int index = schema.getFieldNames().indexOf(column);
+                if (index < 0) {
+                    throw new IllegalArgumentException("No column " + column + " in " + file.getPath());
+                }
+                TypeDescription type = schema.getChildren().get(index);
+                Object literal = orcLiteral(type, column, value);
+                SearchArgument sarg = SearchArgumentFactory.newBuilder()
+                        .startAnd()
+                        .equals(column, orcType(type, column), literal)
+                        .end()
+                        .build();
+                boolean[] include = new boolean[schema.getMaximumId() + 1];
+                include[0] = true;
+                include[type.getId()] = true;
+
+                List<StripeInformation> stripes = reader.getStripes();
+                List<StripeStatistics> stripeStats = reader.getStripeStatistics();
+                VectorizedRowBatch batch = schema.createRowBatch();
+                try (RecordReaderImpl indexReader = (RecordReaderImpl) reader.rows(reader.options().include(include))) {
+                    for (int i = 0; i < stripes.size(); i++) {
+                        total++;
+                        if (mayContain(stripeStats.get(i).getColumnStatistics()[type.getId()], literal)
+                                && anyRowGroupMayContain(indexReader.readRowIndex(i, include, include), type, literal)) {
+                            withoutBloom++;
+                        }
+                    }
+                }
+                for (StripeInformation stripe : stripes) {
+                    // The reader drops row groups (and so whole stripes) the row index and bloom filters rule out
+                    Reader.Options options = reader.options()
+                            .range(stripe.getOffset(), stripe.getLength())
+                            .include(include)
+                            .searchArgument(sarg, new String[]{column});
+                    try (RecordReader rows = reader.rows(options)) {
+                        if (rows.nextBatch(batch)) {
+                            scanned++;
+                        }
+                    }
+                }
+            }
+        }
+        return new ScanStats("orc", column, value, files.size(), total, withoutBloom, scanned);
+    }
+
+    // The row index min/max check the reader does before it looks at bloom filters
+    private static boolean anyRowGroupMayContain(OrcIndex index, TypeDescription type, Object literal) {
+        for (OrcProto.RowIndexEntry entry : index.getRowGroupIndex()[type.getId()].getEntryList()) {
+            if (mayContain(ColumnStatisticsImpl.deserialize(type, entry.getStatistics()), literal)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static PredicateLeaf.Type orcType(TypeDescription type, String column) {
+        return switch (type.getCategory()) {
+            case STRING, VARCHAR, CHAR -> PredicateLeaf.Type.STRING;
+            case BYTE, SHORT, INT, LONG -> PredicateLeaf.Type.LONG;
+            case FLOAT, DOUBLE -> PredicateLeaf.Type.FLOAT;
+            case BOOLEAN -> PredicateLeaf.Type.BOOLEAN;
+            default -> throw new IllegalArgumentException("Unsupported ORC type for " + column + ": " + type);
+        };
+    }
+
+    private static Object orcLiteral(TypeDescription type, String column, Object value) {
+        return switch (orcType(type, column)) {
+            case STRING -> value.toString();
+            case LONG -> ((Number) value).longValue();
+            case FLOAT -> ((Number) value).doubleValue();
+            default -> value;
+        };
+    }
+
+    private static boolean mayContain(ColumnStatistics stats, Object literal) {
+        if (stats.getNumberOfValues() == 0) {
+            return false;
+        }
+        if (stats instanceof StringColumnStatistics s && s.getMinimum() != null && s.getMaximum() != null) {
+            String v = (String) literal;
+            return s.getMinimum().compareTo(v) <= 0 && s.getMaximum().compareTo(v) >= 0;
+        }
+        if (stats instanceof IntegerColumnStatistics s) {
+            long v = (Long) literal;
+            return s.getMinimum() <= v && s.getMaximum() >= v;
+        }
+        if (stats instanceof DoubleColumnStatistics s) {
+            double v = (Double) literal;
+            return s.getMinimum() <= v && s.getMaximum() >= v;
+        }
+        return true;
+    }
+
+    private static List<LocatedFileStatus> dataFiles(Configuration conf, String path, String extension) throws IOException {
+        Path root = new Path(path);
+        FileSystem fs = root.getFileSystem(conf);
+        List<LocatedFileStatus> files = new ArrayList<>();
+        RemoteIterator<LocatedFileStatus> it = fs.listFiles(root, true);
+        while (it.hasNext()) {
+            LocatedFileStatus status = it.next();
+            if (status.getPath().getName().endsWith(extension) && !FileRanges.isHidden(root, status.getPath())) {
+                files.add(status);
+            }
+        }
+        files.sort((a, b) -> a.getPath().compareTo(b.getPath()));
+        return files;
+    }
+}
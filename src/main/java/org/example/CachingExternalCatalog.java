@@ -0,0 +1,435 @@
+package org.example;
+
+import org.apache.spark.scheduler.SparkListener;
+import org.apache.spark.scheduler.SparkListenerEvent;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.catalyst.catalog.CatalogDatabase;
+import org.apache.spark.sql.catalyst.catalog.CatalogFunction;
+import org.apache.spark.sql.catalyst.catalog.CatalogStatistics;
+import org.apache.spark.sql.catalyst.catalog.CatalogTable;
+import org.apache.spark.sql.catalyst.catalog.CatalogTablePartition;
+import org.apache.spark.sql.catalyst.catalog.DatabaseEvent;
+import org.apache.spark.sql.catalyst.catalog.ExternalCatalog;
+import org.apache.spark.sql.catalyst.catalog.FunctionEvent;
+import org.apache.spark.sql.catalyst.catalog.SessionCatalog;
+import org.apache.spark.sql.catalyst.catalog.TableEvent;
+import org.apache.spark.sql.catalyst.expressions.Expression;
+import org.apache.spark.sql.catalyst.plans.logical.LogicalPlan;
+import org.apache.spark.sql.execution.QueryExecution;
+import org.apache.spark.sql.execution.datasources.InsertIntoHadoopFsRelationCommand;
+import org.apache.spark.sql.hive.execution.CreateHiveTableAsSelectCommand;
+import org.apache.spark.sql.hive.execution.InsertIntoHiveTable;
+import org.apache.spark.sql.types.StructType;
+import org.apache.spark.sql.util.QueryExecutionListener;
+import scala.Option;
+import scala.collection.Seq;
+import scala.collection.immutable.Map;
+import scala.runtime.BoxedUnit;
+
+import java.lang.reflect.Field;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Session-level cache in front of the external catalog, so that repeated queries against the same
+ * Hive tables do not go to the metastore client for the database, the table and its partitions every
+ * time they are analyzed. Database and table metadata and existence checks are cached for {@code ttl};
+ * everything else, including partition listings, goes straight through.
+ * DDL run through this session (CREATE/DROP/ALTER TABLE, LOAD DATA, statistics updates, partition
+ * changes) invalidates the table before it returns. DDL from other sessions of the same application
+ * arrives as catalog events on the listener bus and invalidates asynchronously; changes made by
+ * other applications are only seen once the entry expires.
+ * Hive INSERT INTO/OVERWRITE loads its data and partitions through the shared catalog, bypassing this
+ * one without posting events, which is why partitions are never cached; a {@link QueryExecutionListener}
+ * invalidates the written table's metadata shortly after such a write finishes.
+ * {@link #install} swaps the cache into the session's {@link SessionCatalog}; the shared catalog used
+ * by other sessions is left alone.
+ */
+public class CachingExternalCatalog implements ExternalCatalog {
+
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(5);
+
+    public record Metrics(long hits, long misses, long expired, long invalidations) {
+
+        public double hitRate() {
+            return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        }
+    }
+
+    // table is null for database-level entries
+    private record Key(String kind, String db, String table, Object detail) {
+    }
+
+    private record Entry(Object value, long expiresAt) {
+    }
+
+    private final ExternalCatalog delegate;
+    private final long ttlNanos;
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    // Bumped on every invalidation, so a lookup that raced with one does not cache its stale result
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final SparkListener listener = new SparkListener() {
+        @Override
+        public void onOtherEvent(SparkListenerEvent event) {
+            if (event instanceof TableEvent e) {
+                invalidateTable(e.database(), e.name());
+            } else if (event instanceof DatabaseEvent e && !(event instanceof FunctionEvent)) {
+                invalidateDatabase(e.database());
+            }
+        }
+    };
+
+    private final QueryExecutionListener writes = new QueryExecutionListener() {
+        @Override
+        public void onSuccess(String funcName, QueryExecution qe, long durationNs) {
+            invalidateWritten(qe);
+        }
+
+        @Override
+        public void onFailure(String funcName, QueryExecution qe, Exception exception) {
+            invalidateWritten(qe);
+        }
+    };
+
+    public CachingExternalCatalog(ExternalCatalog delegate, Duration ttl) {
+        this.delegate = delegate;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    public static CachingExternalCatalog install(SparkSession spark) {
+        return install(spark, DEFAULT_TTL);
+    }
+
+    public static CachingExternalCatalog install(SparkSession spark, Duration ttl) {
+        SessionCatalog catalog = spark.sessionState().catalog();
+        // Also forces the lazy val, which would otherwise overwrite the field on first use
+        ExternalCatalog current = catalog.externalCatalog();
+        if (current instanceof CachingExternalCatalog installed) {
+            return installed;
+        }
+        CachingExternalCatalog cache = new CachingExternalCatalog(current, ttl);
+        setExternalCatalog(catalog, cache);
+        spark.sparkContext().addSparkListener(cache.listener);
+        spark.listenerManager().register(cache.writes);
+        return cache;
+    }
+
+    public static void uninstall(SparkSession spark) {
+        SessionCatalog catalog = spark.sessionState().catalog();
+        if (catalog.externalCatalog() instanceof CachingExternalCatalog installed) {
+            setExternalCatalog(catalog, installed.delegate);
+            spark.sparkContext().removeSparkListener(installed.listener);
+            spark.listenerManager().unregister(installed.writes);
+        }
+    }
+
+    // SessionCatalog has no setter; its externalCatalog is a lazy val built from the shared state
+    private static void setExternalCatalog(SessionCatalog catalog, ExternalCatalog externalCatalog) {
+        try {
+            Field field = SessionCatalog.class.getDeclaredField("externalCatalog");
+            field.setAccessible(true);
+            field.set(catalog, externalCatalog);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot replace the session's external catalog", e);
+        }
+    }
+
+    public Metrics metrics() {
+        return new Metrics(hits.sum(), misses.sum(), expired.sum(), invalidations.sum());
+    }
+
+    public void invalidateTable(String db, String table) {
+        generation.incrementAndGet();
+        entries.keySet().removeIf(key -> db.equals(key.db()) && table.equals(key.table()));
+        invalidations.increment();
+    }
+
+    public void invalidateDatabase(String db) {
+        generation.incrementAndGet();
+        entries.keySet().removeIf(key -> db.equals(key.db()));
+        invalidations.increment();
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        entries.clear();
+        invalidations.increment();
+    }
+
+    private void invalidateWritten(QueryExecution qe) {
+        String currentDb = qe.sparkSession().sessionState().catalog().getCurrentDatabase();
+        qe.analyzed().foreach(node -> {
+            Option<CatalogTable> written = writtenTable(node);
+            if (written.isDefined()) {
+                invalidateTable(written.get().identifier().database().getOrElse(() -> currentDb),
+                        written.get().identifier().table());
+            }
+            return BoxedUnit.UNIT;
+        });
+    }
+
+    private static Option<CatalogTable> writtenTable(LogicalPlan node) {
+        if (node instanceof InsertIntoHiveTable insert) {
+            return Option.apply(insert.table());
+        } else if (node instanceof CreateHiveTableAsSelectCommand ctas) {
+            return Option.apply(ctas.tableDesc());
+        } else if (node instanceof InsertIntoHadoopFsRelationCommand insert) {
+            return insert.catalogTable();
+        }
+        return Option.empty();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <V> V cached(String kind, String db, String table, Object detail, Supplier<V> load) {
+        Key key = new Key(kind, db, table, detail);
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            if (System.nanoTime() - entry.expiresAt() < 0) {
+                hits.increment();
+                return (V) entry.value();
+            }
+            entries.remove(key, entry);
+            expired.increment();
+        }
+        misses.increment();
+        long before = generation.get();
+        // Lookups that throw, such as NoSuchTableException, are not cached
+        V value = load.get();
+        if (generation.get() == before) {
+            entries.put(key, new Entry(value, System.nanoTime() + ttlNanos));
+        }
+        return value;
+    }
+
+    // Databases
+
+    @Override
+    public void createDatabase(CatalogDatabase dbDefinition, boolean ignoreIfExists) {
+        delegate.createDatabase(dbDefinition, ignoreIfExists);
+        invalidateDatabase(dbDefinition.name());
+    }
+
+    @Override
+    public void dropDatabase(String db, boolean ignoreIfNotExists, boolean cascade) {
+        delegate.dropDatabase(db, ignoreIfNotExists, cascade);
+        invalidateDatabase(db);
+    }
+
+    @Override
+    public void alterDatabase(CatalogDatabase dbDefinition) {
+        delegate.alterDatabase(dbDefinition);
+        invalidateDatabase(dbDefinition.name());
+    }
+
+    @Override
+    public CatalogDatabase getDatabase(String db) {
+        return cached("getDatabase", db, null, null, () -> delegate.getDatabase(db));
+    }
+
+    @Override
+    public boolean databaseExists(String db) {
+        return cached("databaseExists", db, null, null, () -> delegate.databaseExists(db));
+    }
+
+    @Override
+    public Seq<String> listDatabases() {
+        return delegate.listDatabases();
+    }
+
+    @Override
+    public Seq<String> listDatabases(String pattern) {
+        return delegate.listDatabases(pattern);
+    }
+
+    @Override
+    public void setCurrentDatabase(String db) {
+        delegate.setCurrentDatabase(db);
+    }
+
+    // Tables
+
+    @Override
+    public void createTable(CatalogTable tableDefinition, boolean ignoreIfExists) {
+        delegate.createTable(tableDefinition, ignoreIfExists);
+        invalidateTable(tableDefinition.database(), tableDefinition.identifier().table());
+    }
+
+    @Override
+    public void dropTable(String db, String table, boolean ignoreIfNotExists, boolean purge) {
+        delegate.dropTable(db, table, ignoreIfNotExists, purge);
+        invalidateTable(db, table);
+    }
+
+    @Override
+    public void renameTable(String db, String oldName, String newName) {
+        delegate.renameTable(db, oldName, newName);
+        invalidateTable(db, oldName);
+        invalidateTable(db, newName);
+    }
+
+    @Override
+    public void alterTable(CatalogTable tableDefinition) {
+        delegate.alterTable(tableDefinition);
+        invalidateTable(tableDefinition.database(), tableDefinition.identifier().table());
+    }
+
+    @Override
+    public void alterTableDataSchema(String db, String table, StructType newDataSchema) {
+        delegate.alterTableDataSchema(db, table, newDataSchema);
+        invalidateTable(db, table);
+    }
+
+    @Override
+    public void alterTableStats(String db, String table, Option<CatalogStatistics> stats) {
+        delegate.alterTableStats(db, table, stats);
+        invalidateTable(db, table);
+    }
+
+    @Override
+    public CatalogTable getTable(String db, String table) {
+        return cached("getTable", db, table, null, () -> delegate.getTable(db, table));
+    }
+
+    @Override
+    public Seq<CatalogTable> getTablesByName(String db, Seq<String> tables) {
+        return delegate.getTablesByName(db, tables);
+    }
+
+    @Override
+    public boolean tableExists(String db, String table) {
+        return cached("tableExists", db, table, null, () -> delegate.tableExists(db, table));
+    }
+
+    @Override
+    public Seq<String> listTables(String db) {
+        return delegate.listTables(db);
+    }
+
+    @Override
+    public Seq<String> listTables(String db, String pattern) {
+        return delegate.listTables(db, pattern);
+    }
+
+    @Override
+    public Seq<String> listViews(String db, String pattern) {
+        return delegate.listViews(db, pattern);
+    }
+
+    @Override
+    public void loadTable(String db, String table, String loadPath, boolean isOverwrite, boolean isSrcLocal) {
+        delegate.loadTable(db, table, loadPath, isOverwrite, isSrcLocal);
+        invalidateTable(db, table);
+    }
+
+    @Override
+    public void loadPartition(String db, String table, String loadPath, Map<String, String> partition,
+                              boolean isOverwrite, boolean inheritTableSpecs, boolean isSrcLocal) {
+        delegate.loadPartition(db, table, loadPath, partition, isOverwrite, inheritTableSpecs, isSrcLocal);
+        invalidateTable(db, table);
+    }
+
+    @Override
+    public void loadDynamicPartitions(String db, String table, String loadPath, Map<String, String> partition,
+                                      boolean replace, int numDP) {
+        delegate.loadDynamicPartitions(db, table, loadPath, partition, replace, numDP);
+        invalidateTable(db, table);
+    }
+
+    // Partitions
+
+    @Override
+    public void createPartitions(String db, String table, Seq<CatalogTablePartition> parts, boolean ignoreIfExists) {
+        delegate.createPartitions(db, table, parts, ignoreIfExists);
+        invalidateTable(db, table);
+    }
+
+    @Override
+    public void dropPartitions(String db, String table, Seq<Map<String, String>> parts,
+                               boolean ignoreIfNotExists, boolean purge, boolean retainData) {
+        delegate.dropPartitions(db, table, parts, ignoreIfNotExists, purge, retainData);
+        invalidateTable(db, table);
+    }
+
+    @Override
+    public void renamePartitions(String db, String table, Seq<Map<String, String>> specs, Seq<Map<String, String>> newSpecs) {
+        delegate.renamePartitions(db, table, specs, newSpecs);
+        invalidateTable(db, table);
+    }
+
+    @Override
+    public void alterPartitions(String db, String table, Seq<CatalogTablePartition> parts) {
+        delegate.alterPartitions(db, table, parts);
+        invalidateTable(db, table);
+    }
+
+    @Override
+    public CatalogTablePartition getPartition(String db, String table, Map<String, String> spec) {
+        return delegate.getPartition(db, table, spec);
+    }
+
+    @Override
+    public Option<CatalogTablePartition> getPartitionOption(String db, String table, Map<String, String> spec) {
+        return delegate.getPartitionOption(db, table, spec);
+    }
+
+    @Override
+    public Seq<String> listPartitionNames(String db, String table, Option<Map<String, String>> partialSpec) {
+        return delegate.listPartitionNames(db, table, partialSpec);
+    }
+
+    @Override
+    public Seq<CatalogTablePartition> listPartitions(String db, String table, Option<Map<String, String>> partialSpec) {
+        return delegate.listPartitions(db, table, partialSpec);
+    }
+
+    // Predicates carry per-query expression ids, so these would never hit
+    @Override
+    public Seq<CatalogTablePartition> listPartitionsByFilter(String db, String table, Seq<Expression> predicates,
+                                                            String defaultTimeZoneId) {
+        return delegate.listPartitionsByFilter(db, table, predicates, defaultTimeZoneId);
+    }
+
+    // Functions
+
+    @Override
+    public void createFunction(String db, CatalogFunction funcDefinition) {
+        delegate.createFunction(db, funcDefinition);
+    }
+
+    @Override
+    public void dropFunction(String db, String funcName) {
+        delegate.dropFunction(db, funcName);
+    }
+
+    @Override
+    public void alterFunction(String db, CatalogFunction funcDefinition) {
+        delegate.alterFunction(db, funcDefinition);
+    }
+
+    @Override
+    public void renameFunction(String db, String oldName, String newName) {
+        delegate.renameFunction(db, oldName, newName);
+    }
+
+    @Override
+    public CatalogFunction getFunction(String db, String funcName) {
+        return delegate.getFunction(db, funcName);
+    }
+
+    @Override
+    public boolean functionExists(String db, String funcName) {
+        return delegate.functionExists(db, funcName);
+    }
+
+    @Override
+    public Seq<String> listFunctions(String db, String pattern) {
+        return delegate.listFunctions(db, pattern);
+    }
+}
@@ -0,0 +1,65 @@
+package org.example;
+
+import org.apache.spark.sql.SparkSession;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the same batch of small queries against Hive tables in an embedded Derby metastore, once
+ * straight through the metastore client and once through a {@link CachingExternalCatalog}, then
+ * checks that {@code LOAD DATA} invalidates the cached table.
+ * Usage: CatalogCacheBenchmark [queries] (defaults to 1000)
+ */
+public class CatalogCacheBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int queries = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        Path dir = Files.createTempDirectory("catalog-cache-benchmark");
+        Path kv = dir.resolve("kv1.txt");
+        List<String> lines = new ArrayList<>();
+        for (int key = 0; key < 500; key++) {
+            lines.add(key + ColumnarTableLoader.HIVE_DEFAULT_DELIMITER + "val_" + key);
+        }
+        Files.write(kv, lines);
+
+        SparkSession spark = SparkSession.builder()
+                .appName("CatalogCacheBenchmark")
+                .master("local[*]")
+                .config("spark.sql.warehouse.dir", dir.resolve("warehouse").toString())
+                .config("spark.hadoop.javax.jdo.option.ConnectionURL",
+                        "jdbc:derby:;databaseName=" + dir.resolve("metastore_db") + ";create=true")
+                .enableHiveSupport()
+                .getOrCreate();
+        spark.sql("CREATE TABLE src (key INT, value STRING) USING hive");
+        spark.sql("LOAD DATA LOCAL INPATH '" + kv + "' INTO TABLE src");
+        spark.sql("CREATE TABLE src_part (key INT, value STRING) USING hive PARTITIONED BY (ds STRING)");
+        spark.sql("INSERT INTO src_part PARTITION (ds = '2008-04-08') SELECT * FROM src");
+
+        // Warm up code paths and the metastore connection
+        run(spark, 50);
+        long start = System.nanoTime();
+        run(spark, queries);
+        System.out.printf("metastore: %d queries, %d ms%n", queries, (System.nanoTime() - start) / 1_000_000);
+
+        CachingExternalCatalog cache = CachingExternalCatalog.install(spark);
+        start = System.nanoTime();
+        run(spark, queries);
+        System.out.printf("cached:    %d queries, %d ms, %s%n", queries, (System.nanoTime() - start) / 1_000_000, cache.metrics());
+
+        spark.sql("LOAD DATA LOCAL INPATH '" + kv + "' INTO TABLE src");
+        long rows = spark.sql("SELECT COUNT(*) FROM src").first().getLong(0);
+        System.out.printf("after LOAD DATA: %d rows in src, %s%n", rows, cache.metrics());
+        spark.stop();
+    }
+
+    private static void run(SparkSession spark, int queries) {
+        for (int i = 0; i < queries; i++) {
+            String table = i % 2 == 0 ? "src" : "src_part";
+            spark.sql("SELECT value FROM " + table + " WHERE key = " + (i % 500)).collectAsList();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package org.example;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.catalyst.InternalRow;
+import org.apache.spark.sql.catalyst.expressions.GenericInternalRow;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.StructType;
+import org.apache.spark.unsafe.types.UTF8String;
+import org.apache.spark.util.SerializableConfiguration;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.apache.spark.sql.functions.col;
+import static org.apache.spark.sql.functions.count;
+import static org.apache.spark.sql.functions.length;
+import static org.apache.spark.sql.functions.sum;
+
+/**
+ * Chunked variant of {@code option("wholetext", "true")}: instead of one String row per file, which
+ * cannot exceed 2 GB and has to fit on the heap, every file becomes an ordered run of rows
+ * {@code (path, offset, chunk, last)} with {@code chunk} at most {@code chunkBytes} bytes, so a task
+ * only ever holds one chunk of a file. Large uncompressed files are split on chunk boundaries into
+ * ranges of about {@code spark.sql.files.maxPartitionBytes}; within a partition rows stay in file
+ * order. Chunks are raw bytes and may cut through a line or a multi-byte character; {@code offset}
+ * and {@code last} are there to stitch them back. Compressed files are read whole by one task, with
+ * offsets into the decompressed stream.
+ */
+public class ChunkedWholeText {
+
+    public static final int DEFAULT_CHUNK_BYTES = 4 * 1024 * 1024;
+    public static final StructType SCHEMA = new StructType()
+            .add("path", DataTypes.StringType, false)
+            .add("offset", DataTypes.LongType, false)
+            .add("chunk", DataTypes.BinaryType, false)
+            .add("last", DataTypes.BooleanType, false);
+
+    public static Dataset<Row> read(SparkSession spark, String path) throws IOException {
+        return read(spark, path, DEFAULT_CHUNK_BYTES, spark.sessionState().conf().filesMaxPartitionBytes());
+    }
+
+    public static Dataset<Row> read(SparkSession spark, String path, int chunkBytes, long maxSplitBytes) throws IOException {
+        Configuration conf = spark.sparkContext().hadoopConfiguration();
+        // Ranges start on chunk boundaries, so chunk offsets are the same however the file is split
+        long alignedSplitBytes = Math.max(1, maxSplitBytes / chunkBytes) * chunkBytes;
+        List<FileRanges.Range> ranges = FileRanges.plan(conf, path, alignedSplitBytes);
+        SerializableConfiguration taskConf = new SerializableConfiguration(conf);
+        JavaRDD<InternalRow> rows = JavaSparkContext.fromSparkContext(spark.sparkContext())
+                .parallelize(ranges, Math.max(1, ranges.size()))
+                .mapPartitions(it -> it.hasNext()
+                        ? new ChunkIterator(taskConf.value(), it.next(), chunkBytes)
+                        : Collections.<InternalRow>emptyIterator());
+        return ColumnarRows.toDataFrame(spark, rows.rdd(), SCHEMA);
+    }
+
+    private static class ChunkIterator implements Iterator<InternalRow> {
+        private final InputStream in;
+        private final UTF8String path;
+        private final long end;
+        private final boolean endsFile;
+        // Two buffers: the chunk being returned and the look-ahead that tells whether it is the last one
+        private byte[] buffer;
+        private byte[] spare;
+        private final GenericInternalRow row = new GenericInternalRow(4);
+        private long offset;
+        private int filled;
+        private boolean closed;
+
+        ChunkIterator(Configuration conf, FileRanges.Range range, int chunkBytes) throws IOException {
+            Path file = new Path(range.path());
+            FSDataInputStream stream = file.getFileSystem(conf).open(file);
+            try {
+                if (range.compressed()) {
+                    CompressionCodec codec = new CompressionCodecFactory(conf).getCodec(file);
+                    this.in = codec.createInputStream(stream);
+                    this.end = Long.MAX_VALUE;
+                    this.endsFile = true;
+                } else {
+                    stream.seek(range.start());
+                    this.in = stream;
+                    this.end = range.end();
+                    this.endsFile = range.end() == file.getFileSystem(conf).getFileStatus(file).getLen();
+                }
+            } catch (IOException | RuntimeException e) {
+                stream.close();
+                throw e;
+            }
+            // show(), limit and take stop before the last chunk
+            ColumnarRows.closeOnTaskCompletion(in);
+            this.path = UTF8String.fromString(range.path());
+            this.offset = range.start();
+            this.buffer = new byte[chunkBytes];
+            this.spare = new byte[chunkBytes];
+            fill();
+        }
+
+        // Reads the next chunk into buffer, short only at the end of the range or file
+        private void fill() throws IOException {
+            int want = (int) Math.min(buffer.length, end - offset);
+            filled = 0;
+            while (filled < want) {
+                int n = in.read(buffer, filled, want - filled);
+                if (n < 0) {
+                    break;
+                }
+                filled += n;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (filled > 0) {
+                return true;
+            }
+            if (!closed) {
+                closed = true;
+                close();
+            }
+            return false;
+        }
+
+        @Override
+        public InternalRow next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            // RDDScanExec projects the row into an UnsafeRow before asking for the next one, so full
+            // chunks can be returned without a copy; only a short chunk needs an array of its own
+            byte[] chunk = filled == buffer.length ? buffer : Arrays.copyOf(buffer, filled);
+            long chunkOffset = offset;
+            offset += filled;
+            byte[] returned = buffer;
+            buffer = spare;
+            spare = returned;
+            try {
+                fill();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            boolean last = filled == 0 && endsFile;
+            row.update(0, path);
+            row.setLong(1, chunkOffset);
+            row.update(2, chunk);
+            row.setBoolean(3, last);
+            return row;
+        }
+
+        private void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // Usage: ChunkedWholeText <path> [chunkBytes]; prints bytes and lines per file using only chunks
+    public static void main(String[] args) throws IOException {
+        String path = args.length > 0 ? args[0] : "src/main/resources/people.txt";
+        int chunkBytes = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_CHUNK_BYTES;
+        SparkSession spark = SparkSession.builder()
+                .appName("ChunkedWholeText")
+                .master("local[*]")
+                .getOrCreate();
+        read(spark, path, chunkBytes, spark.sessionState().conf().filesMaxPartitionBytes())
+                .selectExpr("path", "chunk",
+                        "length(cast(chunk AS STRING)) - length(replace(cast(chunk AS STRING), '\\n', '')) AS newlines")
+                .groupBy("path")
+                .agg(count("*").as("chunks"), sum(length(col("chunk"))).as("bytes"), sum("newlines").as("lines"))
+                .show(false);
+        spark.stop();
+    }
+}
@@ -0,0 +1,127 @@
+package org.example;
+
+import org.apache.spark.TaskContext;
+import org.apache.spark.rdd.RDD;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Encoders;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.catalyst.InternalRow;
+import org.apache.spark.sql.catalyst.expressions.Attribute;
+import org.apache.spark.sql.catalyst.expressions.SortOrder;
+import org.apache.spark.sql.catalyst.plans.physical.UnknownPartitioning;
+import org.apache.spark.sql.catalyst.types.DataTypeUtils;
+import org.apache.spark.sql.execution.LogicalRDD;
+import org.apache.spark.sql.types.StructType;
+import org.apache.spark.util.TaskCompletionListener;
+import scala.Option;
+import scala.collection.JavaConverters;
+import scala.collection.Seq;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Plumbing shared by the sources and operators here that produce InternalRows a batch at a time:
+ * turning an RDD of InternalRows into a DataFrame, iterating batch by batch, and closing inputs
+ * when a task ends.
+ */
+class ColumnarRows {
+
+    private ColumnarRows() {
+    }
+
+    // Same plan internalCreateDataFrame builds, through public constructors. RDDScanExec projects every
+    // row into an UnsafeRow right away, so the rows may be reused views over a batch.
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static Dataset<Row> toDataFrame(SparkSession spark, RDD<InternalRow> rows, StructType schema) {
+        Seq<Attribute> output = (Seq) DataTypeUtils.toAttributes(schema);
+        LogicalRDD plan = new LogicalRDD(output, rows, new UnknownPartitioning(0),
+                JavaConverters.asScalaBuffer(Collections.<SortOrder>emptyList()).toSeq(), false,
+                spark, Option.empty(), Option.empty());
+        return new Dataset<>(spark, plan, Encoders.row(schema));
+    }
+
+    // Closes the input when the current task completes, since show(), limit and take may stop
+    // reading it early; closing it again once it is exhausted must be harmless
+    static void closeOnTaskCompletion(Closeable input) {
+        TaskContext context = TaskContext.get();
+        if (context != null) {
+            context.addTaskCompletionListener((TaskCompletionListener) c -> {
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the rows of one batch after another. The rows are usually views over a reused batch,
+     * same as Spark's own ColumnarToRow, so callers must not hold on to them.
+     * Inside a task the input is also closed when the task completes, since {@code show()},
+     * {@code limit} and {@code take} stop reading before the last batch.
+     */
+    abstract static class BatchIterator implements Iterator<InternalRow> {
+        private Iterator<InternalRow> current = Collections.emptyIterator();
+        private boolean closed;
+
+        protected BatchIterator() {
+            closeOnTaskCompletion(this::closeOnce);
+        }
+
+        // Rows of the next batch, or null once the input is exhausted
+        protected abstract Iterator<InternalRow> nextBatch() throws IOException;
+
+        // Called once, after the last batch or when the task completes, whichever comes first; runs
+        // from the listener even when a subclass constructor failed, so fields may still be null
+        protected abstract void close() throws IOException;
+
+        private void closeOnce() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            current = Collections.emptyIterator();
+            try {
+                close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                if (closed) {
+                    return false;
+                }
+                Iterator<InternalRow> rows;
+                try {
+                    rows = nextBatch();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (rows == null) {
+                    closeOnce();
+                    return false;
+                }
+                current = rows;
+            }
+            return true;
+        }
+
+        @Override
+        public InternalRow next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package org.example;
+
+import org.apache.spark.sql.AnalysisException;
+import org.apache.spark.sql.Column;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Observation;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SaveMode;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.catalyst.CatalystTypeConverters;
+import org.apache.spark.sql.catalyst.TableIdentifier;
+import org.apache.spark.sql.catalyst.catalog.CatalogColumnStat;
+import org.apache.spark.sql.catalyst.catalog.CatalogColumnStat$;
+import org.apache.spark.sql.catalyst.catalog.CatalogStatistics;
+import org.apache.spark.sql.catalyst.catalog.CatalogTable;
+import org.apache.spark.sql.catalyst.plans.logical.ColumnStat;
+import org.apache.spark.sql.execution.command.CommandUtils;
+import org.apache.spark.sql.types.BinaryType;
+import org.apache.spark.sql.types.BooleanType;
+import org.apache.spark.sql.types.DataType;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.DateType;
+import org.apache.spark.sql.types.NumericType;
+import org.apache.spark.sql.types.StringType;
+import org.apache.spark.sql.types.StructField;
+import org.apache.spark.sql.types.StructType;
+import org.apache.spark.sql.types.TimestampNTZType;
+import org.apache.spark.sql.types.TimestampType;
+import scala.Option;
+import scala.Predef;
+import scala.Tuple2;
+import scala.collection.JavaConverters;
+import scala.math.BigInt;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.spark.sql.functions.approx_count_distinct;
+import static org.apache.spark.sql.functions.avg;
+import static org.apache.spark.sql.functions.ceil;
+import static org.apache.spark.sql.functions.col;
+import static org.apache.spark.sql.functions.count;
+import static org.apache.spark.sql.functions.length;
+import static org.apache.spark.sql.functions.lit;
+import static org.apache.spark.sql.functions.max;
+import static org.apache.spark.sql.functions.min;
+
+/**
+ * Replacement for {@code LOAD DATA ... INTO TABLE} into a text-format Hive table, after which every
+ * query parses the text again. {@link #load} parses the delimited text once and writes it as a managed
+ * Parquet or ORC table. The rows are observed on their way to the writer, so the same pass yields what
+ * {@code ANALYZE TABLE ... COMPUTE STATISTICS FOR ALL COLUMNS} would compute (row count, distinct and
+ * null counts, min/max, lengths), which is stored in the catalog together with the written size.
+ * With statistics in the catalog, {@code spark.sql.cbo.enabled} can estimate joins and filters and
+ * small tables qualify for broadcast joins; {@code COUNT(*)} reads no column data at all.
+ * Works with the in-memory catalog as well as with {@code enableHiveSupport()}, where the table and its
+ * statistics are stored in the metastore.
+ */
+public class ColumnarTableLoader {
+
+    // Field separator of Hive's default text format, used by kv1.txt
+    public static final String HIVE_DEFAULT_DELIMITER = "\u0001";
+
+    public record Result(String table, String format, long rows, long sizeInBytes, int columnsWithStats,
+                         long writeMillis, long analyzeMillis) {
+    }
+
+    public static Result load(SparkSession spark, String textPath, String table, StructType schema)
+            throws AnalysisException, InterruptedException {
+        return load(spark, textPath, table, schema, HIVE_DEFAULT_DELIMITER, "parquet", false);
+    }
+
+    /**
+     * Like Hive's LazySimpleSerDe, fields that do not parse as their column type become null, and
+     * missing trailing fields are null. {@code overwrite} replaces the table's data like
+     * {@code LOAD DATA ... OVERWRITE}, otherwise rows are appended. Statistics of an append into a
+     * non-empty table cannot be derived from the new rows alone, so that case falls back to ANALYZE TABLE.
+     */
+    public static Result load(SparkSession spark, String textPath, String table, StructType schema,
+                              String delimiter, String format, boolean overwrite)
+            throws AnalysisException, InterruptedException {
+        Dataset<Row> text = spark.read()
+                .schema(schema)
+                .option("sep", delimiter)
+                .option("header", "false")
+                .option("mode", "PERMISSIVE")
+                .option("quote", "")
+                .csv(textPath);
+
+        TableIdentifier identifier = spark.sessionState().sqlParser().parseTableIdentifier(table);
+        boolean replaced = overwrite || !spark.sessionState().catalog().tableExists(identifier)
+                || spark.table(table).isEmpty();
+        Observation observation = new Observation("load_statistics");
+        List<Column> metrics = metrics(schema);
+
+        long start = System.nanoTime();
+        text.observe(observation, metrics.get(0), metrics.subList(1, metrics.size()).toArray(new Column[0]))
+                .write()
+                .format(format)
+                .mode(overwrite ? SaveMode.Overwrite : SaveMode.Append)
+                .saveAsTable(table);
+        long written = System.nanoTime();
+        if (replaced) {
+            storeStatistics(spark, identifier, schema, observation.getAsJava());
+        } else {
+            spark.sql("ANALYZE TABLE " + table + " COMPUTE STATISTICS FOR ALL COLUMNS");
+        }
+        long analyzed = System.nanoTime();
+
+        CatalogStatistics stats = statistics(spark, table);
+        return new Result(table, format,
+                stats.rowCount().isDefined() ? stats.rowCount().get().longValue() : -1,
+                stats.sizeInBytes().longValue(),
+                stats.colStats().size(),
+                (written - start) / 1_000_000,
+                (analyzed - written) / 1_000_000);
+    }
+
+    // The aggregates ANALYZE TABLE runs per column; types it has no column statistics for are skipped
+    private static List<Column> metrics(StructType schema) {
+        List<Column> metrics = new ArrayList<>();
+        metrics.add(count(lit(1)).as("rows"));
+        for (StructField field : schema.fields()) {
+            Column column = col(field.name());
+            String name = field.name();
+            if (hasMinMax(field.dataType())) {
+                metrics.add(min(column).as(name + ".min"));
+                metrics.add(max(column).as(name + ".max"));
+            } else if (field.dataType() instanceof StringType || field.dataType() instanceof BinaryType) {
+                metrics.add(ceil(avg(length(column))).as(name + ".avgLen"));
+                metrics.add(max(length(column)).as(name + ".maxLen"));
+            } else {
+                continue;
+            }
+            metrics.add(approx_count_distinct(column).as(name + ".distinct"));
+            metrics.add(count(column).as(name + ".nonNull"));
+        }
+        return metrics;
+    }
+
+    private static boolean hasMinMax(DataType type) {
+        return type instanceof NumericType || type instanceof BooleanType || type instanceof DateType
+                || type instanceof TimestampType || type instanceof TimestampNTZType;
+    }
+
+    private static void storeStatistics(SparkSession spark, TableIdentifier identifier, StructType schema,
+                                        Map<String, Object> metrics) throws AnalysisException {
+        long rows = (Long) metrics.get("rows");
+        Map<String, CatalogColumnStat> colStats = new HashMap<>();
+        for (StructField field : schema.fields()) {
+            String name = field.name();
+            if (!metrics.containsKey(name + ".distinct")) {
+                continue;
+            }
+            DataType type = field.dataType();
+            long defaultSize = type.defaultSize();
+            ColumnStat stat = new ColumnStat(
+                    Option.apply(BigInt.apply((Long) metrics.get(name + ".distinct"))),
+                    Option.apply(CatalystTypeConverters.convertToCatalyst(metrics.get(name + ".min"))),
+                    Option.apply(CatalystTypeConverters.convertToCatalyst(metrics.get(name + ".max"))),
+                    Option.apply(BigInt.apply(rows - (Long) metrics.get(name + ".nonNull"))),
+                    Option.apply(lengthStat(metrics.get(name + ".avgLen"), defaultSize)),
+                    Option.apply(lengthStat(metrics.get(name + ".maxLen"), defaultSize)),
+                    Option.empty(),
+                    CatalogColumnStat$.MODULE$.VERSION());
+            colStats.put(name, stat.toCatalogColumnStat(name, type));
+        }
+        CatalogTable metadata = spark.sessionState().catalog().getTableMetadata(identifier);
+        BigInt size = CommandUtils.calculateTotalSize(spark, metadata)._1();
+        CatalogStatistics stats = new CatalogStatistics(size, Option.apply(BigInt.apply(rows)),
+                JavaConverters.mapAsScalaMap(colStats).toMap(Predef.<Tuple2<String, CatalogColumnStat>>$conforms()));
+        spark.sessionState().catalog().alterTableStats(identifier, Option.apply(stats));
+    }
+
+    // Fixed-width types, and columns that are all null, report the type's default size like ANALYZE does
+    private static Object lengthStat(Object observed, long defaultSize) {
+        return observed == null ? defaultSize : ((Number) observed).longValue();
+    }
+
+    public static CatalogStatistics statistics(SparkSession spark, String table) throws AnalysisException {
+        Option<CatalogStatistics> stats = spark.sessionState().catalog()
+                .getTableMetadata(spark.sessionState().sqlParser().parseTableIdentifier(table))
+                .stats();
+        if (stats.isEmpty()) {
+            throw new IllegalStateException("No statistics for " + table);
+        }
+        return stats.get();
+    }
+
+    private static long millis(Runnable query) {
+        long start = System.nanoTime();
+        query.run();
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    // Usage: ColumnarTableLoader [kv1.txt | rows]; without a file, writes a kv1.txt-like file with that many rows
+    public static void main(String[] args) throws IOException, AnalysisException, InterruptedException {
+        Path dir = Files.createTempDirectory("columnar-load");
+        Path input;
+        if (args.length > 0 && !args[0].matches("\\d+")) {
+            input = Path.of(args[0]).toAbsolutePath();
+        } else {
+            int rows = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+            Path file = dir.resolve("kv1.txt");
+            List<String> lines = new ArrayList<>(rows);
+            for (int i = 0; i < rows; i++) {
+                int key = (int) ((i * 2654435761L) % 500);
+                lines.add(key + HIVE_DEFAULT_DELIMITER + "val_" + key);
+            }
+            Files.write(file, lines);
+            input = file;
+        }
+        SparkSession spark = SparkSession.builder()
+                .appName("ColumnarTableLoader")
+                .master("local[*]")
+                .config("spark.sql.warehouse.dir", dir.resolve("warehouse").toString())
+                // Embedded Derby metastore in the temp directory rather than ./metastore_db
+                .config("spark.hadoop.javax.jdo.option.ConnectionURL",
+                        "jdbc:derby:;databaseName=" + dir.resolve("metastore_db") + ";create=true")
+                .config("spark.sql.cbo.enabled", "true")
+                .config("spark.sql.cbo.joinReorder.enabled", "true")
+                .enableHiveSupport()
+                .getOrCreate();
+
+        spark.sql("CREATE TABLE src (key INT, value STRING) USING hive");
+        String textFile = input.toString();
+        long textLoad = millis(() -> spark.sql("LOAD DATA LOCAL INPATH '" + textFile + "' INTO TABLE src"));
+        StructType schema = new StructType()
+                .add("key", DataTypes.IntegerType)
+                .add("value", DataTypes.StringType);
+        Result result = load(spark, textFile, "src_parquet", schema);
+        System.out.printf("text LOAD: %d ms%n%s%n", textLoad, result);
+
+        spark.range(1, 100).selectExpr("CAST(id AS INT) AS key", "concat('val_', id) AS value")
+                .createOrReplaceTempView("records");
+        for (String table : List.of("src", "src_parquet")) {
+            long count = millis(() -> spark.sql("SELECT COUNT(*) FROM " + table).collect());
+            String join = "SELECT r.key, count(*) FROM records r JOIN " + table + " s ON r.key = s.key GROUP BY r.key";
+            long joined = millis(() -> spark.sql(join).collect());
+            System.out.printf("%-12s COUNT(*) %6d ms, join %6d ms%n", table, count, joined);
+        }
+        spark.sql("SELECT * FROM records r JOIN src_parquet s ON r.key = s.key").explain("cost");
+        spark.stop();
+    }
+}
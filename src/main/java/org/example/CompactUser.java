@@ -0,0 +1,179 @@
+package org.example;
+
+import org.apache.spark.sql.Encoder;
+import org.apache.spark.sql.catalyst.analysis.GetColumnByOrdinal;
+import org.apache.spark.sql.catalyst.encoders.ExpressionEncoder;
+import org.apache.spark.sql.catalyst.expressions.BoundReference;
+import org.apache.spark.sql.catalyst.expressions.Coalesce;
+import org.apache.spark.sql.catalyst.expressions.CreateNamedStruct;
+import org.apache.spark.sql.catalyst.expressions.Expression;
+import org.apache.spark.sql.catalyst.expressions.If;
+import org.apache.spark.sql.catalyst.expressions.IsNull;
+import org.apache.spark.sql.catalyst.expressions.Literal;
+import org.apache.spark.sql.catalyst.expressions.Not;
+import org.apache.spark.sql.catalyst.expressions.objects.Invoke;
+import org.apache.spark.sql.catalyst.expressions.objects.StaticInvoke;
+import org.apache.spark.sql.types.AbstractDataType;
+import org.apache.spark.sql.types.DataType;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.ObjectType;
+import org.apache.spark.unsafe.types.UTF8String;
+import scala.collection.JavaConverters;
+import scala.collection.Seq;
+import scala.reflect.ClassTag$;
+
+import java.io.Serializable;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Flat variant of {@link User}/{@link Person}: age and hire date are primitive ints and
+ * nullness is kept in a bitmap, so encoders and serializers never box or allocate per field.
+ * The hire date is stored as days since 1970-01-01, the same representation Spark uses for DateType.
+ * {@link #encoder()} maps it to nullable {@code name}, {@code age} and {@code hireDate} columns;
+ * {@code Encoders.bean} would expose the raw ints, which read 0 where the value is null, plus the bitmap.
+ */
+public class CompactUser implements Serializable {
+    static final byte AGE_NULL = 1;
+    static final byte HIRE_DATE_NULL = 1 << 1;
+
+    private String name;
+    private int age;
+    private int hireEpochDay;
+    private byte nulls = AGE_NULL | HIRE_DATE_NULL;
+
+    // Getters and setters
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public int getAge() {
+        return age;
+    }
+
+    public void setAge(int age) {
+        this.age = age;
+        nulls &= ~AGE_NULL;
+    }
+
+    public int getHireEpochDay() {
+        return hireEpochDay;
+    }
+
+    public void setHireEpochDay(int hireEpochDay) {
+        this.hireEpochDay = hireEpochDay;
+        nulls &= ~HIRE_DATE_NULL;
+    }
+
+    public byte getNulls() {
+        return nulls;
+    }
+
+    public void setNulls(byte nulls) {
+        this.nulls = nulls;
+    }
+
+    public boolean hasAge() {
+        return (nulls & AGE_NULL) == 0;
+    }
+
+    public boolean hasHireDate() {
+        return (nulls & HIRE_DATE_NULL) == 0;
+    }
+
+    // Called by the deserializer of encoder()
+    public static CompactUser of(String name, int age, boolean hasAge, int hireEpochDay, boolean hasHireDate) {
+        CompactUser user = new CompactUser();
+        user.name = name;
+        user.age = age;
+        user.hireEpochDay = hireEpochDay;
+        user.nulls = (byte) ((hasAge ? 0 : AGE_NULL) | (hasHireDate ? 0 : HIRE_DATE_NULL));
+        return user;
+    }
+
+    /**
+     * Encoder with nullable {@code name: string, age: int, hireDate: date} columns. The serializer
+     * reads the primitive fields and the bitmap through generated calls, and the deserializer builds
+     * each object with one call to {@link #of}, without boxing.
+     */
+    public static Encoder<CompactUser> encoder() {
+        ObjectType type = new ObjectType(CompactUser.class);
+        BoundReference input = new BoundReference(0, type, true);
+        Expression name = new StaticInvoke(UTF8String.class, DataTypes.StringType, "fromString",
+                seq(invoke(input, "getName", new ObjectType(String.class), true)), types(), true, true, true);
+        Expression age = new If(invoke(input, "hasAge", DataTypes.BooleanType, false),
+                invoke(input, "getAge", DataTypes.IntegerType, false), Literal.create(null, DataTypes.IntegerType));
+        // DateType is days since the epoch as an int, same as hireEpochDay
+        Expression hireDate = new If(invoke(input, "hasHireDate", DataTypes.BooleanType, false),
+                invoke(input, "getHireEpochDay", DataTypes.DateType, false), Literal.create(null, DataTypes.DateType));
+        CreateNamedStruct struct = new CreateNamedStruct(seq(
+                Literal.create("name", DataTypes.StringType), name,
+                Literal.create("age", DataTypes.StringType), age,
+                Literal.create("hireDate", DataTypes.StringType), hireDate));
+        Expression serializer = new If(new IsNull(input), Literal.create(null, struct.dataType()), struct);
+
+        Expression nameColumn = invoke(new GetColumnByOrdinal(0, DataTypes.StringType), "toString",
+                new ObjectType(String.class), true);
+        Expression ageColumn = new GetColumnByOrdinal(1, DataTypes.IntegerType);
+        Expression hireDateColumn = new GetColumnByOrdinal(2, DataTypes.DateType);
+        // A nullable primitive argument would make the whole call null, so nulls are passed as 0 plus a flag
+        Expression deserializer = new StaticInvoke(CompactUser.class, type, "of",
+                seq(nameColumn,
+                        new Coalesce(seq(ageColumn, new Literal(0, DataTypes.IntegerType))), new Not(new IsNull(ageColumn)),
+                        new Coalesce(seq(hireDateColumn, new Literal(0, DataTypes.DateType))), new Not(new IsNull(hireDateColumn))),
+                types(), false, false, true);
+        return new ExpressionEncoder<>(serializer, deserializer, ClassTag$.MODULE$.apply(CompactUser.class));
+    }
+
+    private static Invoke invoke(Expression target, String method, DataType returnType, boolean returnNullable) {
+        return new Invoke(target, method, returnType, seq(), types(), true, returnNullable, true);
+    }
+
+    private static Seq<Expression> seq(Expression... expressions) {
+        return JavaConverters.asScalaBuffer(Arrays.asList(expressions)).toSeq();
+    }
+
+    private static Seq<AbstractDataType> types() {
+        return JavaConverters.asScalaBuffer(Arrays.<AbstractDataType>asList()).toSeq();
+    }
+
+    public static CompactUser from(User user) {
+        CompactUser compact = new CompactUser();
+        compact.name = user.getName();
+        byte nulls = 0;
+        if (user.getAge() != null) {
+            compact.age = user.getAge();
+        } else {
+            nulls |= AGE_NULL;
+        }
+        if (user.getHireSqlDate() != null) {
+            compact.hireEpochDay = (int) user.getHireSqlDate().toLocalDate().toEpochDay();
+        } else {
+            nulls |= HIRE_DATE_NULL;
+        }
+        compact.nulls = nulls;
+        return compact;
+    }
+
+    public User toUser() {
+        User user = new User();
+        user.setName(name);
+        user.setAge(hasAge() ? age : null);
+        user.setHireSqlDate(hasHireDate() ? Date.valueOf(LocalDate.ofEpochDay(hireEpochDay)) : null);
+        return user;
+    }
+
+    @Override
+    public String toString() {
+        return "CompactUser{" +
+                "name='" + name + '\'' +
+                ", age=" + (hasAge() ? age : null) +
+                ", hireDate=" + (hasHireDate() ? LocalDate.ofEpochDay(hireEpochDay) : null) +
+                '}';
+    }
+}
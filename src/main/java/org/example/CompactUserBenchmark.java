@@ -0,0 +1,97 @@
+package org.example;
+
+import org.apache.spark.SparkConf;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Encoders;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.storage.RDDInfo;
+import org.apache.spark.storage.StorageLevel;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Compares {@link User} against {@link CompactUser}: Dataset encode/decode throughput with
+ * Encoders.bean and {@link CompactUser#encoder()}, cached Dataset size, and serialized RDD cache
+ * size with the Kryo registrator.
+ * Usage: CompactUserBenchmark [rows]
+ */
+public class CompactUserBenchmark {
+
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        SparkConf conf = new SparkConf()
+                .setAppName("CompactUserBenchmark")
+                .setMaster("local[*]")
+                .set("spark.serializer", "org.apache.spark.serializer.KryoSerializer")
+                .set("spark.kryo.registrator", CompactUserKryoRegistrator.class.getName());
+        SparkSession spark = SparkSession.builder().config(conf).getOrCreate();
+        JavaSparkContext sc = JavaSparkContext.fromSparkContext(spark.sparkContext());
+
+        List<User> users = generateUsers(rows);
+        List<CompactUser> compactUsers = new ArrayList<>(rows);
+        for (User user : users) {
+            compactUsers.add(CompactUser.from(user));
+        }
+
+        System.out.println("=============== Dataset encode/decode ===============");
+        time("User encode+decode", rows,
+                () -> spark.createDataset(users, Encoders.bean(User.class)).collectAsList().size());
+        time("CompactUser encode+decode", rows,
+                () -> spark.createDataset(compactUsers, CompactUser.encoder()).collectAsList().size());
+
+        System.out.println("=============== Cached Dataset size ===============");
+        Dataset<User> userDs = spark.createDataset(users, Encoders.bean(User.class));
+        Dataset<CompactUser> compactDs = spark.createDataset(compactUsers, CompactUser.encoder());
+        System.out.printf("User cached bytes: %d%n", cachedSize(sc, () -> userDs.persist(StorageLevel.MEMORY_ONLY()).count(), userDs::unpersist));
+        System.out.printf("CompactUser cached bytes: %d%n", cachedSize(sc, () -> compactDs.persist(StorageLevel.MEMORY_ONLY()).count(), compactDs::unpersist));
+
+        System.out.println("=============== Serialized RDD cache size (Kryo) ===============");
+        JavaRDD<User> userRdd = sc.parallelize(users).persist(StorageLevel.MEMORY_ONLY_SER());
+        JavaRDD<CompactUser> compactRdd = sc.parallelize(compactUsers).persist(StorageLevel.MEMORY_ONLY_SER());
+        System.out.printf("User RDD bytes: %d%n", cachedSize(sc, userRdd::count, userRdd::unpersist));
+        System.out.printf("CompactUser RDD bytes: %d%n", cachedSize(sc, compactRdd::count, compactRdd::unpersist));
+
+        spark.stop();
+    }
+
+    private static List<User> generateUsers(int rows) {
+        List<User> users = new ArrayList<>(rows);
+        LocalDate start = LocalDate.of(2020, 1, 1);
+        for (int i = 0; i < rows; i++) {
+            User user = new User();
+            user.setName("user_" + i);
+            // Leave some values null so the bitmap is exercised
+            user.setAge(i % 10 == 0 ? null : 20 + i % 40);
+            user.setHireSqlDate(i % 7 == 0 ? null : Date.valueOf(start.plusDays(i % 1500)));
+            users.add(user);
+        }
+        return users;
+    }
+
+    private static void time(String label, int rows, Supplier<Integer> action) {
+        // First run warms up codegen and the JIT
+        action.get();
+        long start = System.nanoTime();
+        int count = action.get();
+        long nanos = System.nanoTime() - start;
+        System.out.printf("%s: %d rows in %d ms (%.0f rows/s)%n",
+                label, count, nanos / 1_000_000, rows / (nanos / 1e9));
+    }
+
+    private static long cachedSize(JavaSparkContext sc, Runnable materialize, Runnable release) {
+        materialize.run();
+        long bytes = 0;
+        for (RDDInfo info : sc.sc().getRDDStorageInfo()) {
+            bytes += info.memSize();
+        }
+        release.run();
+        return bytes;
+    }
+}
@@ -0,0 +1,50 @@
+package org.example;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.apache.spark.serializer.KryoRegistrator;
+
+/**
+ * Registers {@link CompactUser} with a hand-written serializer for RDD shuffles and
+ * MEMORY_ONLY_SER caching. Enable with
+ * {@code spark.serializer=org.apache.spark.serializer.KryoSerializer} and
+ * {@code spark.kryo.registrator=org.example.CompactUserKryoRegistrator}.
+ */
+public class CompactUserKryoRegistrator implements KryoRegistrator {
+
+    @Override
+    public void registerClasses(Kryo kryo) {
+        kryo.register(CompactUser.class, new CompactUserSerializer());
+    }
+
+    // Null fields are skipped entirely, the bitmap tells the reader which ones follow.
+    static class CompactUserSerializer extends Serializer<CompactUser> {
+        @Override
+        public void write(Kryo kryo, Output output, CompactUser user) {
+            output.writeByte(user.getNulls());
+            output.writeString(user.getName());
+            if (user.hasAge()) {
+                output.writeVarInt(user.getAge(), true);
+            }
+            if (user.hasHireDate()) {
+                output.writeVarInt(user.getHireEpochDay(), false);
+            }
+        }
+
+        @Override
+        public CompactUser read(Kryo kryo, Input input, Class<CompactUser> type) {
+            CompactUser user = new CompactUser();
+            user.setNulls(input.readByte());
+            user.setName(input.readString());
+            if (user.hasAge()) {
+                user.setAge(input.readVarInt(true));
+            }
+            if (user.hasHireDate()) {
+                user.setHireEpochDay(input.readVarInt(false));
+            }
+            return user;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.example;
+
+import org.apache.spark.sql.SaveMode;
+import org.apache.spark.sql.SparkSession;
+
+import java.nio.file.Files;
+
+import static org.apache.spark.sql.functions.col;
+
+/**
+ * Writes a partitioned table as many tiny files (like frequent streaming micro-batches), times a few
+ * reads, compacts it with {@link FileCompactor} and times the same reads again.
+ * Usage: CompactionBenchmark [rows] [filesPerPartition]
+ */
+public class CompactionBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        long rows = args.length > 0 ? Long.parseLong(args[0]) : 10_000_000L;
+        int filesPerPartition = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        String path = Files.createTempDirectory("compaction-benchmark").resolve("table").toString();
+
+        SparkSession spark = SparkSession.builder()
+                .appName("CompactionBenchmark")
+                .master("local[*]")
+                .getOrCreate();
+
+        spark.range(rows)
+                .select(col("id"), col("id").mod(10).as("key"), col("id").multiply(31).mod(1000).as("value"))
+                .repartition(filesPerPartition)
+                .write()
+                .mode(SaveMode.Overwrite)
+                .partitionBy("key")
+                .parquet(path);
+
+        readLatency(spark, path, "before");
+        long start = System.nanoTime();
+        FileCompactor.Result result = new FileCompactor(spark, "parquet", 128L * 1024 * 1024, 4).compact(path);
+        System.out.printf("compaction: %s in %d ms%n", result, (System.nanoTime() - start) / 1_000_000);
+        readLatency(spark, path, "after");
+
+        spark.stop();
+    }
+
+    private static void readLatency(SparkSession spark, String path, String label) {
+        long start = System.nanoTime();
+        long all = spark.read().parquet(path).count();
+        long countMs = (System.nanoTime() - start) / 1_000_000;
+
+        start = System.nanoTime();
+        long filtered = spark.read().option("mergeSchema", "true").parquet(path)
+                .where(col("key").equalTo(3).and(col("value").lt(10))).count();
+        long filterMs = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.printf("%-6s files=%d  count(*)=%d in %d ms  filtered=%d in %d ms%n", label,
+                spark.read().parquet(path).inputFiles().length, all, countMs, filtered, filterMs);
+    }
+}
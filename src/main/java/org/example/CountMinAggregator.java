@@ -0,0 +1,78 @@
+package org.example;
+
+import org.apache.spark.sql.Encoder;
+import org.apache.spark.sql.Encoders;
+import org.apache.spark.sql.expressions.Aggregator;
+import org.apache.spark.util.sketch.CountMinSketch;
+import org.apache.spark.util.sketch.IncompatibleMergeException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Builds a Count-Min sketch of item frequencies using Spark's own {@link CountMinSketch}
+ * and returns it as bytes. Estimates never undercount, and overcount by at most
+ * {@code eps * total} with probability {@code confidence}.
+ */
+public class CountMinAggregator extends Aggregator<String, CountMinSketch, byte[]> {
+
+    public static final double DEFAULT_EPS = 0.001;
+    public static final double DEFAULT_CONFIDENCE = 0.99;
+
+    private final double eps;
+    private final double confidence;
+    private final int seed;
+
+    public CountMinAggregator() {
+        this(DEFAULT_EPS, DEFAULT_CONFIDENCE, 42);
+    }
+
+    public CountMinAggregator(double eps, double confidence, int seed) {
+        this.eps = eps;
+        this.confidence = confidence;
+        this.seed = seed;
+    }
+
+    @Override
+    public CountMinSketch zero() {
+        return CountMinSketch.create(eps, confidence, seed);
+    }
+
+    @Override
+    public CountMinSketch reduce(CountMinSketch sketch, String item) {
+        if (item != null) {
+            sketch.addString(item);
+        }
+        return sketch;
+    }
+
+    @Override
+    public CountMinSketch merge(CountMinSketch s1, CountMinSketch s2) {
+        try {
+            s1.mergeInPlace(s2);
+        } catch (IncompatibleMergeException e) {
+            // Every buffer comes from zero(), so the sketches always have the same shape
+            throw new IllegalStateException(e);
+        }
+        return s1;
+    }
+
+    @Override
+    public byte[] finish(CountMinSketch sketch) {
+        try {
+            return sketch.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Encoder<CountMinSketch> bufferEncoder() {
+        return Encoders.javaSerialization(CountMinSketch.class);
+    }
+
+    @Override
+    public Encoder<byte[]> outputEncoder() {
+        return Encoders.BINARY();
+    }
+}
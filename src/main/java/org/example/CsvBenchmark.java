@@ -0,0 +1,67 @@
+package org.example;
+
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SaveMode;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.types.StructType;
+
+import java.nio.file.Files;
+
+import static org.apache.spark.sql.functions.col;
+import static org.apache.spark.sql.functions.count;
+import static org.apache.spark.sql.functions.length;
+import static org.apache.spark.sql.functions.max;
+import static org.apache.spark.sql.functions.sum;
+
+/**
+ * Writes a people.csv-like file set (semicolon delimited, header, unquoted) of a few GB and scans it
+ * with Spark's CSV reader using inferSchema, Spark's CSV reader with the schema given, and
+ * {@link FastCsvReader}, aggregating every column so nothing is pruned.
+ * Usage: CsvBenchmark [rows] (defaults to 50M, about 2.5 GB)
+ */
+public class CsvBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        long rows = args.length > 0 ? Long.parseLong(args[0]) : 50_000_000L;
+        String path = Files.createTempDirectory("csv-benchmark").toString() + "/people";
+
+        SparkSession spark = SparkSession.builder()
+                .appName("CsvBenchmark")
+                .master("local[*]")
+                .getOrCreate();
+
+        spark.range(rows)
+                .selectExpr("concat('person-', id) AS name",
+                        "cast(id % 80 AS INT) AS age",
+                        "CASE WHEN id % 3 = 0 THEN NULL ELSE concat('job-', id % 1000) END AS job",
+                        "id * 7 AS salary",
+                        "rand(1) * 100 AS score")
+                .write()
+                .mode(SaveMode.Overwrite)
+                .option("delimiter", ";")
+                .option("header", "true")
+                .csv(path);
+
+        for (int run = 0; run < 2; run++) {
+            long start = System.nanoTime();
+            Dataset<Row> inferred = spark.read().option("delimiter", ";").option("header", "true")
+                    .option("inferSchema", "true").csv(path);
+            StructType schema = inferred.schema();
+            report("spark csv, inferSchema", inferred, start);
+
+            start = System.nanoTime();
+            report("spark csv, given schema", spark.read().option("delimiter", ";").option("header", "true")
+                    .schema(schema).csv(path), start);
+
+            start = System.nanoTime();
+            report("fast csv, sampled schema", FastCsvReader.read(spark, path, ';'), start);
+        }
+        spark.stop();
+    }
+
+    private static void report(String name, Dataset<Row> df, long start) {
+        Row result = df.agg(count("*"), max(length(col("name"))), sum("age"), count("job"), sum("salary"), sum("score")).first();
+        System.out.printf("%-26s %d ms %s%n", name, (System.nanoTime() - start) / 1_000_000, result);
+    }
+}
@@ -0,0 +1,75 @@
+package org.example;
+
+import org.apache.spark.sql.Column;
+import org.apache.spark.sql.SparkSession;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.apache.spark.sql.functions.count;
+import static org.apache.spark.sql.functions.max;
+import static org.apache.spark.sql.functions.min;
+import static org.apache.spark.sql.functions.sum;
+
+/**
+ * Custom aggregate described by buffer columns instead of Java code. Each buffer column has an
+ * update expression over the arguments and a merge kind (SUM, COUNT, MIN, MAX) that fixes its initial
+ * value and how partial buffers combine. The result is an expression over the merged buffers.
+ * Buffers become built-in aggregate functions, so the aggregate runs in HashAggregateExec with
+ * UnsafeRow buffers and whole-stage codegen instead of ObjectHashAggregate with a serialized object.
+ * <pre>
+ * new DeclarativeAggregate()
+ *         .buffer("sum", DeclarativeAggregate.Merge.SUM, args -> args[0])
+ *         .buffer("count", DeclarativeAggregate.Merge.COUNT, args -> args[0])
+ *         .evaluate(b -> b.get("sum").divide(b.get("count")))
+ *         .register(spark, "myAverage", 1);
+ * </pre>
+ */
+public class DeclarativeAggregate {
+
+    public enum Merge {
+        SUM, COUNT, MIN, MAX
+    }
+
+    private final List<String> names = new ArrayList<>();
+    private final List<Merge> merges = new ArrayList<>();
+    private final List<Function<Column[], Column>> updates = new ArrayList<>();
+    private Function<Map<String, Column>, Column> evaluate;
+
+    public DeclarativeAggregate buffer(String name, Merge merge, Function<Column[], Column> update) {
+        names.add(name);
+        merges.add(merge);
+        updates.add(update);
+        return this;
+    }
+
+    public DeclarativeAggregate evaluate(Function<Map<String, Column>, Column> evaluate) {
+        this.evaluate = evaluate;
+        return this;
+    }
+
+    public Column apply(Column... args) {
+        if (names.isEmpty() || evaluate == null) {
+            throw new IllegalStateException("A declarative aggregate needs at least one buffer and an evaluate expression");
+        }
+        Map<String, Column> buffers = new LinkedHashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            Column input = updates.get(i).apply(args);
+            buffers.put(names.get(i), switch (merges.get(i)) {
+                case SUM -> sum(input);
+                case COUNT -> count(input);
+                case MIN -> min(input);
+                case MAX -> max(input);
+            });
+        }
+        return evaluate.apply(buffers);
+    }
+
+    // Makes the aggregate callable from SQL, e.g. SELECT myAverage(salary) FROM employees
+    public void register(SparkSession spark, String name, int arity) {
+        ExpressionUdfs.register(spark, name, arity, this::apply);
+    }
+}
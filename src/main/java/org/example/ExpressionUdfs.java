@@ -0,0 +1,96 @@
+package org.example;
+
+import org.apache.spark.sql.Column;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.network.util.JavaUtils;
+import org.apache.spark.sql.catalyst.expressions.Expression;
+import scala.collection.JavaConverters;
+import scala.collection.Seq;
+import scala.runtime.AbstractFunction1;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.apache.spark.sql.functions.length;
+import static org.apache.spark.sql.functions.regexp_replace;
+
+/**
+ * Registers SQL functions whose body is a Column expression instead of an opaque lambda.
+ * The function name is bound to a builder that expands each call into the Catalyst expression,
+ * so {@code WHERE oneArgFilter(id)} is planned exactly like {@code WHERE id > 5}: it is
+ * code-generated, constant-folded and pushed down into file scans, and no UDF shows up in the plan.
+ */
+public class ExpressionUdfs {
+
+    public static void register(SparkSession spark, String name, int arity, Function<Column[], Column> body) {
+        spark.sessionState().functionRegistry()
+                .createOrReplaceTempFunction(name, new ColumnFunctionBuilder(name, arity, body), "java_udf");
+    }
+
+    /**
+     * {@code String.length()} as an expression. Spark's {@code length} counts code points, while Java
+     * counts UTF-16 chars, so each character outside the BMP is counted once more.
+     */
+    public static Column utf16Length(Column s) {
+        return length(s).plus(length(regexp_replace(s, "[^\\x{10000}-\\x{10FFFF}]", "")));
+    }
+
+    private static class ColumnFunctionBuilder extends AbstractFunction1<Seq<Expression>, Expression> {
+        private final String name;
+        private final int arity;
+        private final Function<Column[], Column> body;
+
+        ColumnFunctionBuilder(String name, int arity, Function<Column[], Column> body) {
+            this.name = name;
+            this.arity = arity;
+            this.body = body;
+        }
+
+        @Override
+        public Expression apply(Seq<Expression> children) {
+            List<Expression> args = JavaConverters.seqAsJavaList(children);
+            if (args.size() != arity) {
+                throw new IllegalArgumentException(String.format(
+                        "Function %s expects %d argument(s) but got %d", name, arity, args.size()));
+            }
+            Column[] columns = new Column[arity];
+            for (int i = 0; i < arity; i++) {
+                columns[i] = new Column(args.get(i));
+            }
+            return body.apply(columns).expr();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        SparkSession spark = SparkSession.builder()
+                .appName("ExpressionUdfs")
+                .master("local")
+                .getOrCreate();
+
+        // Same functions as JavaUserDefinedScalar, declared as expressions
+        register(spark, "plusOne", 1, cols -> cols[0].plus(1));
+        register(spark, "oneArgFilter", 1, cols -> cols[0].gt(5));
+        register(spark, "strLen", 2, cols -> utf16Length(cols[0]).plus(cols[1]));
+
+        spark.sql("SELECT plusOne(5), strLen('test', 1)").show();
+
+        File dir = Files.createTempDirectory("expression-udfs").toFile();
+        try {
+            String path = new File(dir, "range.parquet").getPath();
+            spark.range(1, 10).write().parquet(path);
+            spark.read().parquet(path).createOrReplaceTempView("test");
+
+            // The plan shows Filter (id > 5) and PushedFilters: [IsNotNull(id), GreaterThan(id,5)], no UDF
+            Dataset<Row> filtered = spark.sql("SELECT * FROM test WHERE oneArgFilter(id)");
+            filtered.explain(true);
+            filtered.show();
+        } finally {
+            spark.stop();
+            JavaUtils.deleteRecursively(dir);
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package org.example;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.catalyst.InternalRow;
+import org.apache.spark.sql.execution.vectorized.OnHeapColumnVector;
+import org.apache.spark.sql.execution.vectorized.WritableColumnVector;
+import org.apache.spark.sql.types.DataType;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.StructType;
+import org.apache.spark.sql.vectorized.ColumnarBatch;
+import org.apache.spark.util.SerializableConfiguration;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Fast path for simple delimited files with a header line, such as {@code people.csv}: no quoting,
+ * no escapes, no multi-line values. Each file range is scanned as bytes straight into on-heap column
+ * vectors, {@value #BATCH_SIZE} rows at a time, without Univocity and without a String per field;
+ * strings are copied as UTF-8 bytes and numbers are parsed from the bytes.
+ * The schema comes from the header of the first file and the first {@code sampleLines} data lines of
+ * every file instead of a full inference pass (int, long, double, boolean, otherwise string; empty is
+ * null). Sampling and reading use the same byte parsers, which only take plain ASCII decimals (no
+ * "NaN", "Infinity" or "1d"), so a sampled value is never read as null. Values that do not fit the
+ * inferred type later in a file become null, like PERMISSIVE mode.
+ * If the sample contains a quote character the generic CSV reader is used instead.
+ */
+public class FastCsvReader {
+
+    public static final int DEFAULT_SAMPLE_LINES = 1000;
+    static final int BATCH_SIZE = 4096;
+
+    // Returned by parseLong for anything but a decimal that fits a long; a valid input never parses to it
+    private static final long NOT_A_LONG = Long.MIN_VALUE;
+
+    public static Dataset<Row> read(SparkSession spark, String path, char delimiter) throws IOException {
+        return read(spark, path, delimiter, DEFAULT_SAMPLE_LINES);
+    }
+
+    public static Dataset<Row> read(SparkSession spark, String path, char delimiter, int sampleLines) throws IOException {
+        Configuration conf = spark.sparkContext().hadoopConfiguration();
+        List<FileRanges.Range> ranges = FileRanges.plan(conf, path, spark.sessionState().conf().filesMaxPartitionBytes());
+        if (ranges.isEmpty()) {
+            throw new IllegalArgumentException("No data files under " + path);
+        }
+        // The range at offset 0 of each file: its header, then up to sampleLines data lines
+        byte[] header = null;
+        List<byte[]> sample = new ArrayList<>();
+        for (FileRanges.Range range : ranges) {
+            if (range.start() != 0) {
+                continue;
+            }
+            try (FileRanges.Lines lines = new FileRanges.Lines(conf, range)) {
+                Text line = new Text();
+                if (!lines.next(line)) {
+                    continue;
+                }
+                if (header == null) {
+                    header = line.copyBytes();
+                }
+                for (int n = 0; n < sampleLines && lines.next(line); n++) {
+                    sample.add(line.copyBytes());
+                }
+            }
+        }
+        if (header == null || contains(header, (byte) '"') || sample.stream().anyMatch(l -> contains(l, (byte) '"'))) {
+            return spark.read()
+                    .option("delimiter", String.valueOf(delimiter))
+                    .option("header", "true")
+                    .option("inferSchema", "true")
+                    .csv(path);
+        }
+        byte separator = (byte) delimiter;
+        StructType schema = inferSchema(header, sample, separator);
+
+        // SerializableConfiguration is private[spark] in Scala but public in bytecode, and is what
+        // Spark's own file sources use to ship the Hadoop configuration to tasks
+        SerializableConfiguration taskConf = new SerializableConfiguration(conf);
+        JavaRDD<InternalRow> rows = JavaSparkContext.fromSparkContext(spark.sparkContext())
+                .parallelize(ranges, ranges.size())
+                .mapPartitions(it -> {
+                    if (!it.hasNext()) {
+                        return Collections.<InternalRow>emptyIterator();
+                    }
+                    return new BatchIterator(new FileRanges.Lines(taskConf.value(), it.next()), schema, separator);
+                });
+        return ColumnarRows.toDataFrame(spark, rows.rdd(), schema);
+    }
+
+    static StructType inferSchema(byte[] header, List<byte[]> sample, byte separator) {
+        int columns = 1;
+        for (byte b : header) {
+            if (b == separator) {
+                columns++;
+            }
+        }
+        int[] fieldStart = new int[columns];
+        int[] fieldEnd = new int[columns];
+        DataType[] types = new DataType[columns];
+        for (byte[] line : sample) {
+            int fields = split(line, line.length, separator, fieldStart, fieldEnd);
+            for (int i = 0; i < fields; i++) {
+                if (fieldStart[i] < fieldEnd[i]) {
+                    types[i] = widen(types[i], typeOf(line, fieldStart[i], fieldEnd[i]));
+                }
+            }
+        }
+        split(header, header.length, separator, fieldStart, fieldEnd);
+        StructType schema = new StructType();
+        for (int i = 0; i < columns; i++) {
+            String name = new String(header, fieldStart[i], fieldEnd[i] - fieldStart[i], StandardCharsets.UTF_8);
+            schema = schema.add(name, types[i] == null ? DataTypes.StringType : types[i], true);
+        }
+        return schema;
+    }
+
+    private static boolean contains(byte[] line, byte b) {
+        for (byte c : line) {
+            if (c == b) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Field boundaries of the first fieldStart.length fields; returns how many were found
+    private static int split(byte[] bytes, int length, byte separator, int[] fieldStart, int[] fieldEnd) {
+        int fields = 0;
+        int start = 0;
+        for (int i = 0; i <= length && fields < fieldStart.length; i++) {
+            if (i == length || bytes[i] == separator) {
+                fieldStart[fields] = start;
+                fieldEnd[fields] = i;
+                fields++;
+                start = i + 1;
+            }
+        }
+        return fields;
+    }
+
+    private static DataType typeOf(byte[] bytes, int start, int end) {
+        long value = parseLong(bytes, start, end);
+        if (value != NOT_A_LONG) {
+            return value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE ? DataTypes.IntegerType : DataTypes.LongType;
+        }
+        if (!Double.isNaN(parseDouble(bytes, start, end))) {
+            return DataTypes.DoubleType;
+        }
+        if (parseBoolean(bytes, start, end) != null) {
+            return DataTypes.BooleanType;
+        }
+        return DataTypes.StringType;
+    }
+
+    private static DataType widen(DataType current, DataType next) {
+        if (current == null || current.equals(next)) {
+            return next;
+        }
+        List<DataType> numeric = List.of(DataTypes.IntegerType, DataTypes.LongType, DataTypes.DoubleType);
+        if (numeric.contains(current) && numeric.contains(next)) {
+            return numeric.get(Math.max(numeric.indexOf(current), numeric.indexOf(next)));
+        }
+        return DataTypes.StringType;
+    }
+
+    // [+-]digits, or NOT_A_LONG
+    private static long parseLong(byte[] bytes, int start, int end) {
+        boolean negative = bytes[start] == '-';
+        int i = negative || bytes[start] == '+' ? start + 1 : start;
+        if (i == end || end - i > 19) {
+            return NOT_A_LONG;
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return NOT_A_LONG;
+            }
+            value = value * 10 + digit;
+        }
+        // 19 digits can wrap around
+        if (value < 0) {
+            return NOT_A_LONG;
+        }
+        return negative ? -value : value;
+    }
+
+    // [+-]digits[.digits][(e|E)[+-]digits], with at least one digit before the exponent, or NaN
+    private static double parseDouble(byte[] bytes, int start, int end) {
+        int i = start;
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            i++;
+        }
+        int digits = 0;
+        for (; i < end && isDigit(bytes[i]); i++) {
+            digits++;
+        }
+        if (i < end && bytes[i] == '.') {
+            for (i++; i < end && isDigit(bytes[i]); i++) {
+                digits++;
+            }
+        }
+        if (digits == 0) {
+            return Double.NaN;
+        }
+        if (i < end && (bytes[i] == 'e' || bytes[i] == 'E')) {
+            i++;
+            if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+                i++;
+            }
+            int exponentStart = i;
+            while (i < end && isDigit(bytes[i])) {
+                i++;
+            }
+            if (i == exponentStart) {
+                return Double.NaN;
+            }
+        }
+        if (i != end) {
+            return Double.NaN;
+        }
+        // Only ASCII is left, and for these Double.parseDouble rounds correctly
+        return Double.parseDouble(new String(bytes, start, end - start, StandardCharsets.US_ASCII));
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    // true or false in any case, otherwise null
+    private static Boolean parseBoolean(byte[] bytes, int start, int end) {
+        if (matches(bytes, start, end, "true")) {
+            return Boolean.TRUE;
+        }
+        if (matches(bytes, start, end, "false")) {
+            return Boolean.FALSE;
+        }
+        return null;
+    }
+
+    private static boolean matches(byte[] bytes, int start, int end, String lowerCase) {
+        if (end - start != lowerCase.length()) {
+            return false;
+        }
+        for (int i = 0; i < lowerCase.length(); i++) {
+            if ((bytes[start + i] | 0x20) != lowerCase.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class BatchIterator extends ColumnarRows.BatchIterator {
+        private final FileRanges.Lines lines;
+        private final DataType[] types;
+        private final byte separator;
+        private final WritableColumnVector[] columns;
+        private final ColumnarBatch batch;
+        private final Text line = new Text();
+        private final int[] fieldStart;
+        private final int[] fieldEnd;
+
+        BatchIterator(FileRanges.Lines lines, StructType schema, byte separator) throws IOException {
+            this.lines = lines;
+            this.separator = separator;
+            this.types = new DataType[schema.size()];
+            this.columns = new WritableColumnVector[types.length];
+            for (int i = 0; i < types.length; i++) {
+                types[i] = schema.fields()[i].dataType();
+                columns[i] = new OnHeapColumnVector(BATCH_SIZE, types[i]);
+            }
+            this.batch = new ColumnarBatch(columns);
+            this.fieldStart = new int[types.length];
+            this.fieldEnd = new int[types.length];
+            if (lines.position() == 0) {
+                // Header line
+                lines.next(line);
+            }
+        }
+
+        @Override
+        protected Iterator<InternalRow> nextBatch() throws IOException {
+            for (WritableColumnVector column : columns) {
+                column.reset();
+            }
+            int numRows = 0;
+            while (numRows < BATCH_SIZE && lines.next(line)) {
+                byte[] bytes = line.getBytes();
+                int length = line.getLength();
+                if (length == 0) {
+                    continue;
+                }
+                int fields = split(bytes, length, separator, fieldStart, fieldEnd);
+                for (int f = 0; f < types.length; f++) {
+                    if (f >= fields || fieldStart[f] == fieldEnd[f]) {
+                        columns[f].putNull(numRows);
+                    } else {
+                        put(columns[f], types[f], numRows, bytes, fieldStart[f], fieldEnd[f]);
+                    }
+                }
+                numRows++;
+            }
+            if (numRows == 0) {
+                return null;
+            }
+            batch.setNumRows(numRows);
+            return batch.rowIterator();
+        }
+
+        @Override
+        protected void close() throws IOException {
+            lines.close();
+            batch.close();
+        }
+
+        private static void put(WritableColumnVector vector, DataType type, int rowId, byte[] bytes, int start, int end) {
+            if (type.equals(DataTypes.StringType)) {
+                vector.putByteArray(rowId, bytes, start, end - start);
+            } else if (type.equals(DataTypes.IntegerType) || type.equals(DataTypes.LongType)) {
+                long value = parseLong(bytes, start, end);
+                if (value == NOT_A_LONG) {
+                    vector.putNull(rowId);
+                } else if (type.equals(DataTypes.LongType)) {
+                    vector.putLong(rowId, value);
+                } else if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                    vector.putInt(rowId, (int) value);
+                } else {
+                    vector.putNull(rowId);
+                }
+            } else if (type.equals(DataTypes.DoubleType)) {
+                double value = parseDouble(bytes, start, end);
+                if (Double.isNaN(value)) {
+                    vector.putNull(rowId);
+                } else {
+                    vector.putDouble(rowId, value);
+                }
+            } else {
+                Boolean value = parseBoolean(bytes, start, end);
+                if (value == null) {
+                    vector.putNull(rowId);
+                } else {
+                    vector.putBoolean(rowId, value);
+                }
+            }
+        }
+    }
+}
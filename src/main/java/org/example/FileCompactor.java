@@ -0,0 +1,261 @@
+package org.example;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.spark.sql.SparkSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compacts small files of a (possibly partitioned) Parquet/ORC/JSON table in place.
+ * Files are grouped by their directory, so partitions such as {@code key=1} are never mixed, and the
+ * small ones are bin-packed into groups of about {@code targetFileBytes}. Each bin is read with
+ * {@code mergeSchema} and written back as one file, so the result has the union of the bin's columns
+ * and stays readable with {@code mergeSchema}; bins whose schemas conflict fail and are left untouched.
+ * <p>
+ * Swapping a bin is crash safe rather than atomic: a {@code _compaction-*.pending} marker listing the
+ * old and new files is written first, the new file is renamed into place, the old files are deleted,
+ * and the marker is removed. A reader can briefly see both copies; a later run that finds a marker
+ * finishes the swap (or rolls it back if the new file never landed).
+ */
+public class FileCompactor {
+
+    private static final Logger log = LoggerFactory.getLogger(FileCompactor.class);
+    private static final String MARKER_PREFIX = "_compaction-";
+    private static final String MARKER_SUFFIX = ".pending";
+    private static final String STAGING_PREFIX = "_compaction-staging-";
+
+    private final SparkSession spark;
+    private final String format;
+    private final long targetFileBytes;
+    private final int parallelism;
+
+    public FileCompactor(SparkSession spark, String format, long targetFileBytes, int parallelism) {
+        this.spark = spark;
+        this.format = format;
+        this.targetFileBytes = targetFileBytes;
+        this.parallelism = parallelism;
+    }
+
+    public record Result(int filesBefore, int filesAfter, int bins, int failedBins) {
+    }
+
+    public Result compact(String rootPath) throws IOException {
+        Path root = new Path(rootPath);
+        FileSystem fs = root.getFileSystem(spark.sparkContext().hadoopConfiguration());
+        recoverPending(fs, root);
+
+        Map<Path, List<FileStatus>> byDirectory = listDataFiles(fs, root);
+        List<List<FileStatus>> bins = new ArrayList<>();
+        int filesBefore = 0;
+        for (List<FileStatus> files : byDirectory.values()) {
+            filesBefore += files.size();
+            bins.addAll(pack(files));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        int failed = 0;
+        int removed = 0;
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (List<FileStatus> bin : bins) {
+                futures.add(pool.submit(() -> {
+                    compactBin(fs, bin);
+                    return null;
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                    removed += bins.get(i).size() - 1;
+                } catch (Exception e) {
+                    failed++;
+                    log.warn("Compaction of {} failed", bins.get(i).get(0).getPath().getParent(), e);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return new Result(filesBefore, filesBefore - removed, bins.size(), failed);
+    }
+
+    private Map<Path, List<FileStatus>> listDataFiles(FileSystem fs, Path root) throws IOException {
+        Map<Path, List<FileStatus>> byDirectory = new TreeMap<>();
+        RemoteIterator<LocatedFileStatus> it = fs.listFiles(root, true);
+        while (it.hasNext()) {
+            LocatedFileStatus status = it.next();
+            if (FileRanges.isHidden(root, status.getPath())) {
+                continue;
+            }
+            byDirectory.computeIfAbsent(status.getPath().getParent(), p -> new ArrayList<>()).add(status);
+        }
+        return byDirectory;
+    }
+
+    // First-fit decreasing over the files that are clearly below target; single-file bins are dropped
+    List<List<FileStatus>> pack(List<FileStatus> files) {
+        List<FileStatus> small = new ArrayList<>();
+        for (FileStatus file : files) {
+            if (file.getLen() < targetFileBytes * 3 / 4) {
+                small.add(file);
+            }
+        }
+        small.sort(Comparator.comparingLong(FileStatus::getLen).reversed());
+
+        List<List<FileStatus>> bins = new ArrayList<>();
+        List<Long> sizes = new ArrayList<>();
+        for (FileStatus file : small) {
+            int target = -1;
+            for (int i = 0; i < bins.size(); i++) {
+                if (sizes.get(i) + file.getLen() <= targetFileBytes) {
+                    target = i;
+                    break;
+                }
+            }
+            if (target < 0) {
+                bins.add(new ArrayList<>());
+                sizes.add(0L);
+                target = bins.size() - 1;
+            }
+            bins.get(target).add(file);
+            sizes.set(target, sizes.get(target) + file.getLen());
+        }
+        bins.removeIf(bin -> bin.size() < 2);
+        return bins;
+    }
+
+    private void compactBin(FileSystem fs, List<FileStatus> bin) throws IOException {
+        Path directory = bin.get(0).getPath().getParent();
+        String id = UUID.randomUUID().toString();
+        Path staging = new Path(directory, STAGING_PREFIX + id);
+
+        String[] inputs = bin.stream().map(f -> f.getPath().toString()).toArray(String[]::new);
+        // Explicit file paths: no partition columns are inferred, so none get written into the data
+        spark.read().format(format).option("mergeSchema", "true").load(inputs)
+                .coalesce(1)
+                .write()
+                .format(format)
+                .save(staging.toString());
+
+        Path written = null;
+        for (FileStatus status : fs.listStatus(staging)) {
+            if (!FileRanges.isHidden(staging, status.getPath())) {
+                written = status.getPath();
+            }
+        }
+        if (written == null) {
+            fs.delete(staging, true);
+            throw new IOException("No output written for " + directory);
+        }
+        Path target = new Path(directory, "part-compacted-" + id + extension(written.getName()));
+
+        Path marker = new Path(directory, MARKER_PREFIX + id + MARKER_SUFFIX);
+        List<String> lines = new ArrayList<>();
+        lines.add(written.toString());
+        lines.add(target.toString());
+        for (String input : inputs) {
+            lines.add(input);
+        }
+        try (OutputStream out = fs.create(marker, false)) {
+            out.write(String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+        }
+
+        finishSwap(fs, marker, lines);
+        fs.delete(staging, true);
+    }
+
+    // Marker layout: staged file, final file, then the files it replaces
+    private static void finishSwap(FileSystem fs, Path marker, List<String> lines) throws IOException {
+        Path staged = new Path(lines.get(0));
+        Path target = new Path(lines.get(1));
+        if (!fs.exists(target)) {
+            if (!fs.exists(staged)) {
+                // The compacted file is gone, keep the originals
+                fs.delete(marker, false);
+                return;
+            }
+            if (!fs.rename(staged, target)) {
+                throw new IOException("Could not move " + staged + " to " + target);
+            }
+        }
+        for (String old : lines.subList(2, lines.size())) {
+            fs.delete(new Path(old), false);
+        }
+        fs.delete(marker, false);
+    }
+
+    private void recoverPending(FileSystem fs, Path root) throws IOException {
+        RemoteIterator<LocatedFileStatus> it = fs.listFiles(root, true);
+        List<Path> markers = new ArrayList<>();
+        while (it.hasNext()) {
+            Path path = it.next().getPath();
+            if (path.getName().startsWith(MARKER_PREFIX) && path.getName().endsWith(MARKER_SUFFIX)) {
+                markers.add(path);
+            }
+        }
+        for (Path marker : markers) {
+            List<String> lines = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(marker), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines.add(line);
+                }
+            }
+            if (lines.size() >= 2) {
+                finishSwap(fs, marker, lines);
+            } else {
+                // Truncated while being written, so nothing was moved yet and the originals are intact
+                fs.delete(marker, false);
+            }
+            fs.delete(staging(marker), true);
+        }
+    }
+
+    // _compaction-<id>.pending -> _compaction-staging-<id>, in the same directory
+    private static Path staging(Path marker) {
+        String name = marker.getName();
+        String id = name.substring(MARKER_PREFIX.length(), name.length() - MARKER_SUFFIX.length());
+        return new Path(marker.getParent(), STAGING_PREFIX + id);
+    }
+
+    // part-00000-<uuid>-c000.snappy.parquet -> .snappy.parquet
+    private static String extension(String name) {
+        int dot = name.indexOf('.');
+        return dot < 0 ? "" : name.substring(dot);
+    }
+
+    public static void main(String[] args) {
+        String path = args.length > 0 ? args[0] : "data/test_table";
+        SparkSession spark = SparkSession.builder()
+                .appName("FileCompactor")
+                .master("local[*]")
+                .getOrCreate();
+        try {
+            Result result = new FileCompactor(spark, "parquet", 128L * 1024 * 1024, 4).compact(path);
+            System.out.println(result);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            spark.stop();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.example;
+
+import org.apache.spark.sql.SparkSession;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Creates a deep directory tree of small JSON files, then compares how long it takes to plan a
+ * {@code recursiveFileLookup} + {@code pathGlobFilter} read against reading through a
+ * {@link FileListingIndex}, for a cold index, an unchanged tree and a tree with one new directory.
+ * Usage: FileListingBenchmark [files] [directories] (defaults to 100000 files in 1000 directories)
+ */
+public class FileListingBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int directories = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+        Path root = Files.createTempDirectory("file-listing-benchmark").resolve("events");
+
+        for (int d = 0; d < directories; d++) {
+            Path dir = root.resolve("day=" + (d / 24)).resolve("hour=" + (d % 24));
+            Files.createDirectories(dir);
+            for (int f = 0; f < files / directories; f++) {
+                Files.writeString(dir.resolve("part-" + f + ".json"), "{\"id\":" + f + "}\n");
+            }
+        }
+
+        SparkSession spark = SparkSession.builder()
+                .appName("FileListingBenchmark")
+                .master("local[*]")
+                .getOrCreate();
+
+        long start = System.nanoTime();
+        int plain = spark.read().format("json")
+                .option("recursiveFileLookup", "true")
+                .option("pathGlobFilter", "*.json")
+                .load(root.toString())
+                .inputFiles().length;
+        System.out.printf("recursiveFileLookup:       %d files, %d ms%n", plain, (System.nanoTime() - start) / 1_000_000);
+
+        FileListingIndex index = new FileListingIndex(spark, root.toString());
+        timeIndexedRead(spark, index, "index (cold)");
+        timeIndexedRead(spark, index, "index (unchanged tree)");
+
+        Path added = Files.createDirectories(root.resolve("day=999").resolve("hour=0"));
+        Files.writeString(added.resolve("part-0.json"), "{\"id\":0}\n");
+        timeIndexedRead(spark, index, "index (one new dir)");
+
+        spark.stop();
+    }
+
+    private static void timeIndexedRead(SparkSession spark, FileListingIndex index, String label) throws IOException {
+        long start = System.nanoTime();
+        int relisted = index.refresh();
+        long refreshMs = (System.nanoTime() - start) / 1_000_000;
+        int count = index.read("json", "*.json", null, null).inputFiles().length;
+        System.out.printf("%-26s %d files, %d ms (refresh %d ms, %d dirs re-listed)%n",
+                label + ":", count, (System.nanoTime() - start) / 1_000_000, refreshMs, relisted);
+    }
+}
@@ -0,0 +1,214 @@
+package org.example;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.GlobFilter;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.util.HadoopInputFile;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent listing of every data file under a root directory (path, size, mtime and, for Parquet,
+ * the row count from the footer), kept next to the root as {@code .<root>.file_index}. The index lives
+ * outside the root so that saving it does not change the root's own mtime.
+ * {@link #refresh()} only re-lists directories whose mtime changed since the last refresh; unchanged
+ * directories cost one status call instead of one per file. Adding, removing or renaming files updates
+ * the directory mtime, but rewriting a file in place does not, so files are expected to be immutable,
+ * which is how Spark writes them.
+ * {@link #read} applies the same filters as {@code pathGlobFilter} and {@code modifiedBefore/After}
+ * against the index and hands Spark the resulting file list instead of a directory to walk.
+ */
+public class FileListingIndex {
+
+    public record Entry(String path, long size, long mtime, long rows) {
+    }
+
+    private record Directory(long mtime, List<String> subdirectories, List<Entry> files) {
+    }
+
+    private final SparkSession spark;
+    private final Path root;
+    private final FileSystem fs;
+    private final Configuration conf;
+    private Map<String, Directory> directories = new LinkedHashMap<>();
+    private int listed;
+
+    public FileListingIndex(SparkSession spark, String rootPath) throws IOException {
+        this.spark = spark;
+        this.conf = spark.sparkContext().hadoopConfiguration();
+        Path path = new Path(rootPath);
+        this.fs = path.getFileSystem(conf);
+        // Qualified so keys match the paths returned by listStatus
+        this.root = fs.makeQualified(path);
+        load();
+    }
+
+    // Returns the number of directories that had to be listed again
+    public synchronized int refresh() throws IOException {
+        Map<String, Directory> refreshed = new LinkedHashMap<>();
+        listed = 0;
+        refresh(root, refreshed);
+        directories = refreshed;
+        save();
+        return listed;
+    }
+
+    private void refresh(Path dir, Map<String, Directory> refreshed) throws IOException {
+        FileStatus status;
+        try {
+            status = fs.getFileStatus(dir);
+        } catch (FileNotFoundException e) {
+            return;
+        }
+        String key = dir.toString();
+        Directory cached = directories.get(key);
+        Directory current;
+        if (cached != null && cached.mtime() == status.getModificationTime()) {
+            current = cached;
+        } else {
+            listed++;
+            Map<String, Entry> previousFiles = new HashMap<>();
+            if (cached != null) {
+                cached.files().forEach(f -> previousFiles.put(f.path(), f));
+            }
+            List<String> subdirectories = new ArrayList<>();
+            List<Entry> files = new ArrayList<>();
+            for (FileStatus child : fs.listStatus(dir)) {
+                if (FileRanges.isHiddenName(child.getPath().getName())) {
+                    continue;
+                }
+                if (child.isDirectory()) {
+                    subdirectories.add(child.getPath().toString());
+                } else {
+                    Entry previous = previousFiles.get(child.getPath().toString());
+                    if (previous != null && previous.size() == child.getLen() && previous.mtime() == child.getModificationTime()) {
+                        files.add(previous);
+                    } else {
+                        files.add(new Entry(child.getPath().toString(), child.getLen(), child.getModificationTime(), rowCount(child)));
+                    }
+                }
+            }
+            current = new Directory(status.getModificationTime(), subdirectories, files);
+        }
+        refreshed.put(key, current);
+        for (String subdirectory : current.subdirectories()) {
+            refresh(new Path(subdirectory), refreshed);
+        }
+    }
+
+    // -1 when unknown; only Parquet footers are read
+    private long rowCount(FileStatus file) {
+        if (!file.getPath().getName().endsWith(".parquet")) {
+            return -1;
+        }
+        try (ParquetFileReader reader = ParquetFileReader.open(HadoopInputFile.fromStatus(file, conf))) {
+            return reader.getRecordCount();
+        } catch (IOException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    public synchronized List<Entry> files() {
+        List<Entry> files = new ArrayList<>();
+        for (Directory directory : directories.values()) {
+            files.addAll(directory.files());
+        }
+        return files;
+    }
+
+    public List<String> select(String pathGlobFilter, Long modifiedAfterMillis, Long modifiedBeforeMillis) throws IOException {
+        GlobFilter glob = pathGlobFilter == null ? null : new GlobFilter(pathGlobFilter);
+        List<String> paths = new ArrayList<>();
+        for (Entry entry : files()) {
+            if (glob != null && !glob.accept(new Path(entry.path()))) {
+                continue;
+            }
+            if (modifiedAfterMillis != null && entry.mtime() <= modifiedAfterMillis) {
+                continue;
+            }
+            if (modifiedBeforeMillis != null && entry.mtime() >= modifiedBeforeMillis) {
+                continue;
+            }
+            paths.add(entry.path());
+        }
+        return paths;
+    }
+
+    public Dataset<Row> read(String format, String pathGlobFilter, Long modifiedAfterMillis, Long modifiedBeforeMillis) throws IOException {
+        List<String> paths = select(pathGlobFilter, modifiedAfterMillis, modifiedBeforeMillis);
+        if (paths.isEmpty()) {
+            throw new IllegalArgumentException("No indexed files under " + root + " match the filters");
+        }
+        return spark.read().format(format).load(paths.toArray(new String[0]));
+    }
+
+    private Path indexPath() {
+        return new Path(root.getParent(), "." + root.getName() + ".file_index");
+    }
+
+    // Layout: "D\t<mtime>\t<dir>" followed by "F\t<size>\t<mtime>\t<rows>\t<file>" for its files,
+    // then "S\t<subdir>" for its subdirectories
+    private void save() throws IOException {
+        Path index = indexPath();
+        Path tmp = index.suffix(".tmp");
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(fs.create(tmp, true), StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, Directory> e : directories.entrySet()) {
+                Directory directory = e.getValue();
+                writer.write("D\t" + directory.mtime() + "\t" + e.getKey() + "\n");
+                for (Entry file : directory.files()) {
+                    writer.write("F\t" + file.size() + "\t" + file.mtime() + "\t" + file.rows() + "\t" + file.path() + "\n");
+                }
+                for (String subdirectory : directory.subdirectories()) {
+                    writer.write("S\t" + subdirectory + "\n");
+                }
+            }
+        }
+        fs.delete(index, false);
+        if (!fs.rename(tmp, index)) {
+            throw new IOException("Could not write " + index);
+        }
+    }
+
+    // A missing, unreadable or corrupt index is dropped, and the next refresh rebuilds it from a full listing
+    private void load() {
+        Map<String, Directory> loaded = new LinkedHashMap<>();
+        Path index = indexPath();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(index), StandardCharsets.UTF_8))) {
+            Directory current = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", 5);
+                switch (fields[0]) {
+                    case "D" -> {
+                        current = new Directory(Long.parseLong(fields[1]), new ArrayList<>(), new ArrayList<>());
+                        loaded.put(fields[2], current);
+                    }
+                    case "F" -> current.files().add(new Entry(fields[4], Long.parseLong(fields[1]),
+                            Long.parseLong(fields[2]), Long.parseLong(fields[3])));
+                    case "S" -> current.subdirectories().add(fields[1]);
+                    default -> throw new IllegalArgumentException("Corrupt file index line: " + line);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            loaded.clear();
+        }
+        directories = loaded;
+    }
+}
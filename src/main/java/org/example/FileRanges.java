@@ -0,0 +1,139 @@
+package org.example;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.util.LineReader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits the data files under a path into byte ranges for the hand-written readers in this package,
+ * the way Spark's file sources split them: at most {@code maxBytes} per range, compressed files whole.
+ * {@link Lines} reads the lines of one range with the usual convention that a line belongs to the
+ * range its first byte is in, so the ranges of a file together return every line exactly once.
+ */
+public class FileRanges {
+
+    public record Range(String path, long start, long length, boolean compressed) implements Serializable {
+
+        public long end() {
+            return start + length;
+        }
+    }
+
+    public static List<Range> plan(Configuration conf, String path, long maxBytes) throws IOException {
+        Path root = new Path(path);
+        FileSystem fs = root.getFileSystem(conf);
+        CompressionCodecFactory codecs = new CompressionCodecFactory(conf);
+        List<LocatedFileStatus> files = new ArrayList<>();
+        RemoteIterator<LocatedFileStatus> it = fs.listFiles(root, true);
+        while (it.hasNext()) {
+            LocatedFileStatus status = it.next();
+            if (!isHidden(root, status.getPath()) && status.getLen() > 0) {
+                files.add(status);
+            }
+        }
+        files.sort((a, b) -> a.getPath().compareTo(b.getPath()));
+
+        List<Range> ranges = new ArrayList<>();
+        for (LocatedFileStatus file : files) {
+            String name = file.getPath().toString();
+            if (codecs.getCodec(file.getPath()) != null) {
+                ranges.add(new Range(name, 0, file.getLen(), true));
+                continue;
+            }
+            for (long start = 0; start < file.getLen(); start += maxBytes) {
+                ranges.add(new Range(name, start, Math.min(maxBytes, file.getLen() - start), false));
+            }
+        }
+        return ranges;
+    }
+
+    // True if any path component below root is hidden, so the file is not part of the table's data
+    static boolean isHidden(Path root, Path path) {
+        for (Path p = path; p != null && !p.equals(root); p = p.getParent()) {
+            if (isHiddenName(p.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Same rule as Spark's file index: '_' and '.' prefixes and in-progress copies are hidden, but a
+    // partition directory such as "_c=1" is not
+    static boolean isHiddenName(String name) {
+        return (name.startsWith("_") && !name.contains("=")) || name.startsWith(".") || name.endsWith("._COPYING_");
+    }
+
+    /**
+     * Lines of one range as raw bytes in a reused {@link Text}, without the line terminator and
+     * without decoding to String.
+     */
+    public static class Lines implements Closeable {
+        private final InputStream in;
+        private final LineReader reader;
+        private final long end;
+        private long position;
+
+        public Lines(Configuration conf, Range range) throws IOException {
+            Path path = new Path(range.path());
+            FSDataInputStream file = path.getFileSystem(conf).open(path);
+            try {
+                if (range.compressed()) {
+                    CompressionCodec codec = new CompressionCodecFactory(conf).getCodec(path);
+                    this.in = codec.createInputStream(file);
+                    this.end = Long.MAX_VALUE;
+                } else {
+                    this.in = file;
+                    this.end = range.end();
+                }
+                this.reader = new LineReader(in, 1 << 16);
+                this.position = range.start();
+                if (range.start() > 0) {
+                    // Skip the rest of the line that started in the previous range; if the byte before the
+                    // range is a newline that skips nothing from this range
+                    file.seek(range.start() - 1);
+                    position = range.start() - 1 + reader.readLine(new Text(), 0, Integer.MAX_VALUE);
+                }
+            } catch (IOException | RuntimeException e) {
+                // The caller never gets the instance to close
+                file.close();
+                throw e;
+            }
+        }
+
+        public boolean next(Text line) throws IOException {
+            if (position >= end) {
+                return false;
+            }
+            int consumed = reader.readLine(line, Integer.MAX_VALUE, Integer.MAX_VALUE);
+            if (consumed == 0) {
+                return false;
+            }
+            position += consumed;
+            return true;
+        }
+
+        // Offset of the next line in the file; meaningless for compressed files
+        public long position() {
+            return position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
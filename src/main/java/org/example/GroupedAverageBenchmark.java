@@ -0,0 +1,55 @@
+package org.example;
+
+import org.apache.spark.examples.sql.JavaUserDefinedUntypedAggregation.MyAverage;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Encoders;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.functions;
+
+import static org.apache.spark.sql.functions.col;
+
+/**
+ * Grouped average with the Aggregator-based myAverage udaf from JavaUserDefinedUntypedAggregation
+ * against the same average written as a {@link DeclarativeAggregate}. The plans show
+ * ObjectHashAggregate for the first and HashAggregate with partial_sum/partial_count for the second.
+ * Usage: GroupedAverageBenchmark [rows] [groups]
+ */
+public class GroupedAverageBenchmark {
+
+    public static void main(String[] args) {
+        long rows = args.length > 0 ? Long.parseLong(args[0]) : 50_000_000L;
+        long groups = args.length > 1 ? Long.parseLong(args[1]) : 10_000L;
+
+        SparkSession spark = SparkSession.builder()
+                .appName("GroupedAverageBenchmark")
+                .master("local[*]")
+                .getOrCreate();
+
+        spark.udf().register("myAverage", functions.udaf(new MyAverage(), Encoders.LONG()));
+        new DeclarativeAggregate()
+                .buffer("sum", DeclarativeAggregate.Merge.SUM, a -> a[0])
+                .buffer("count", DeclarativeAggregate.Merge.COUNT, a -> a[0])
+                .evaluate(b -> b.get("sum").divide(b.get("count")))
+                .register(spark, "myDeclarativeAverage", 1);
+
+        spark.range(rows)
+                .select(col("id").mod(groups).as("department"), col("id").mod(10_000).as("salary"))
+                .createOrReplaceTempView("employees");
+
+        run(spark, "udaf", "SELECT department, myAverage(salary) AS average_salary FROM employees GROUP BY department");
+        run(spark, "declarative", "SELECT department, myDeclarativeAverage(salary) AS average_salary FROM employees GROUP BY department");
+
+        spark.stop();
+    }
+
+    private static void run(SparkSession spark, String label, String sql) {
+        Dataset<Row> result = spark.sql(sql);
+        result.explain();
+        // Warm up codegen and the JIT before timing
+        result.selectExpr("sum(average_salary)").first();
+        long start = System.nanoTime();
+        Object total = result.selectExpr("sum(average_salary)").first().get(0);
+        System.out.printf("%-12s %8d ms  (sum of averages %s)%n", label, (System.nanoTime() - start) / 1_000_000, total);
+    }
+}
@@ -0,0 +1,138 @@
+package org.example;
+
+import org.apache.spark.sql.Encoder;
+import org.apache.spark.sql.Encoders;
+import org.apache.spark.sql.expressions.Aggregator;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Approximate distinct count. The buffer is the HyperLogLog register array itself, a
+ * {@code byte[2^precision]} stored as a binary column, and it is updated in place.
+ * Relative standard error is {@code 1.04 / sqrt(2^precision)}, about 0.8% at the default precision 14.
+ * Use {@link OfLong} or {@link OfString} for the input type.
+ */
+public abstract class HyperLogLogAggregator<IN> extends Aggregator<IN, byte[], Long> {
+
+    public static final int DEFAULT_PRECISION = 14;
+
+    private final int precision;
+
+    protected HyperLogLogAggregator(int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("Precision must be between 4 and 18: " + precision);
+        }
+        this.precision = precision;
+    }
+
+    protected abstract long hash(IN input);
+
+    @Override
+    public byte[] zero() {
+        return new byte[1 << precision];
+    }
+
+    @Override
+    public byte[] reduce(byte[] registers, IN input) {
+        if (input != null) {
+            add(registers, precision, hash(input));
+        }
+        return registers;
+    }
+
+    @Override
+    public byte[] merge(byte[] b1, byte[] b2) {
+        for (int i = 0; i < b1.length; i++) {
+            if (b2[i] > b1[i]) {
+                b1[i] = b2[i];
+            }
+        }
+        return b1;
+    }
+
+    @Override
+    public Long finish(byte[] registers) {
+        return Math.round(estimate(registers));
+    }
+
+    @Override
+    public Encoder<byte[]> bufferEncoder() {
+        return Encoders.BINARY();
+    }
+
+    @Override
+    public Encoder<Long> outputEncoder() {
+        return Encoders.LONG();
+    }
+
+    static void add(byte[] registers, int precision, long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // The guard bit caps the rank at 64 - precision + 1 when the remaining bits are all zero
+        byte rank = (byte) (Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    static double estimate(byte[] registers) {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double alpha = 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        // Linear counting is more accurate while many registers are still empty
+        if (estimate <= 2.5 * m && zeros > 0) {
+            return m * Math.log((double) m / zeros);
+        }
+        return estimate;
+    }
+
+    // SplitMix64 finalizer, spreads sequential ids over all 64 bits
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    public static class OfLong extends HyperLogLogAggregator<Long> {
+        public OfLong() {
+            this(DEFAULT_PRECISION);
+        }
+
+        public OfLong(int precision) {
+            super(precision);
+        }
+
+        @Override
+        protected long hash(Long input) {
+            return mix(input);
+        }
+    }
+
+    public static class OfString extends HyperLogLogAggregator<String> {
+        public OfString() {
+            this(DEFAULT_PRECISION);
+        }
+
+        public OfString(int precision) {
+            super(precision);
+        }
+
+        // 64-bit FNV-1a over the UTF-8 bytes, then mixed
+        @Override
+        protected long hash(String input) {
+            long hash = 0xcbf29ce484222325L;
+            for (byte b : input.getBytes(StandardCharsets.UTF_8)) {
+                hash ^= b & 0xff;
+                hash *= 0x100000001b3L;
+            }
+            return mix(hash);
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package org.example;
+
+import org.apache.spark.SparkContext;
+import org.apache.spark.scheduler.SparkListener;
+import org.apache.spark.scheduler.SparkListenerJobEnd;
+import org.apache.spark.scheduler.SparkListenerJobStart;
+import org.apache.spark.scheduler.SparkListenerTaskEnd;
+import org.apache.spark.sql.DataFrameReader;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.jdbc.JdbcDialect;
+import org.apache.spark.sql.jdbc.JdbcDialects;
+import scala.collection.JavaConverters;
+
+import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads a JDBC table over several connections instead of the single connection and task a plain
+ * {@code load()} uses. {@link #plan} looks up MIN, MAX and COUNT of a numeric, date or timestamp column
+ * (the primary key or the first such column unless one is given) and derives {@code partitionColumn},
+ * {@code lowerBound}, {@code upperBound} and {@code numPartitions} from a target number of rows per
+ * partition, capped at {@code maxConnections}. {@code fetchsize} is sized from the table's column types
+ * so that a fetch is about {@value #TARGET_FETCH_BYTES} bytes, unless the properties already set it.
+ * Spark splits the bounds into equal strides, so heavily skewed columns still give uneven partitions.
+ */
+public class JdbcPartitionedReader {
+
+    public static final long DEFAULT_ROWS_PER_PARTITION = 500_000;
+    static final int TARGET_FETCH_BYTES = 4 * 1024 * 1024;
+    private static final int MIN_FETCH_SIZE = 100;
+    private static final int MAX_FETCH_SIZE = 10_000;
+    private static final long LISTENER_TIMEOUT_SECONDS = 60;
+    // Local properties behind SparkContext.setJobGroup
+    private static final String JOB_GROUP_ID = "spark.jobGroup.id";
+    private static final String JOB_DESCRIPTION = "spark.job.description";
+    private static final String JOB_INTERRUPT_ON_CANCEL = "spark.job.interruptOnCancel";
+
+    public record Plan(String table, String partitionColumn, String lowerBound, String upperBound,
+                       int numPartitions, int fetchSize, long rowCount) {
+    }
+
+    public record ConnectionStats(int partition, long rows, long millis) {
+
+        public double rowsPerSecond() {
+            return millis == 0 ? rows * 1000.0 : rows * 1000.0 / millis;
+        }
+    }
+
+    private final SparkSession spark;
+    private final String url;
+    private final Properties properties;
+    private final int maxConnections;
+    private final long rowsPerPartition;
+
+    public JdbcPartitionedReader(SparkSession spark, String url, Properties properties) {
+        this(spark, url, properties, spark.sparkContext().defaultParallelism(), DEFAULT_ROWS_PER_PARTITION);
+    }
+
+    public JdbcPartitionedReader(SparkSession spark, String url, Properties properties, int maxConnections, long rowsPerPartition) {
+        this.spark = spark;
+        this.url = url;
+        this.properties = properties;
+        this.maxConnections = maxConnections;
+        this.rowsPerPartition = rowsPerPartition;
+    }
+
+    public Dataset<Row> read(String table) throws SQLException {
+        return read(plan(table, null));
+    }
+
+    public Dataset<Row> read(String table, String partitionColumn) throws SQLException {
+        return read(plan(table, partitionColumn));
+    }
+
+    public Dataset<Row> read(Plan plan) {
+        DataFrameReader reader = spark.read().format("jdbc").option("url", url).option("dbtable", plan.table());
+        for (String name : properties.stringPropertyNames()) {
+            reader = reader.option(name, properties.getProperty(name));
+        }
+        reader = reader.option("fetchsize", plan.fetchSize());
+        if (plan.partitionColumn() != null && plan.numPartitions() > 1) {
+            reader = reader.option("partitionColumn", plan.partitionColumn())
+                    .option("lowerBound", plan.lowerBound())
+                    .option("upperBound", plan.upperBound())
+                    .option("numPartitions", plan.numPartitions());
+        }
+        return reader.load();
+    }
+
+    public Plan plan(String table, String partitionColumn) throws SQLException {
+        JdbcDialect dialect = JdbcDialects.get(url);
+        try (Connection connection = DriverManager.getConnection(url, properties);
+             Statement statement = connection.createStatement()) {
+            String column;
+            int type;
+            int fetchSize;
+            try (ResultSet rs = statement.executeQuery("SELECT * FROM " + table + " WHERE 1 = 0")) {
+                ResultSetMetaData meta = rs.getMetaData();
+                int index = partitionColumnIndex(connection, table, meta, partitionColumn);
+                column = index < 0 ? null : meta.getColumnName(index);
+                type = index < 0 ? Types.NULL : meta.getColumnType(index);
+                fetchSize = fetchSize(meta);
+            }
+
+            if (column == null) {
+                long rows = count(statement, "SELECT COUNT(*) FROM " + table);
+                return new Plan(table, null, null, null, 1, fetchSize, rows);
+            }
+            String quoted = dialect.quoteIdentifier(column);
+            try (ResultSet rs = statement.executeQuery(
+                    "SELECT MIN(" + quoted + "), MAX(" + quoted + "), COUNT(*) FROM " + table)) {
+                rs.next();
+                long rows = rs.getLong(3);
+                if (rs.getObject(1) == null) {
+                    return new Plan(table, null, null, null, 1, fetchSize, rows);
+                }
+                int partitions = (int) Math.max(1, Math.min(maxConnections, (rows + rowsPerPartition - 1) / rowsPerPartition));
+                return new Plan(table, column, bound(rs, 1, type, RoundingMode.FLOOR), bound(rs, 2, type, RoundingMode.CEILING),
+                        partitions, fetchSize, rows);
+            }
+        }
+    }
+
+    // 1-based index of the column to partition on, or -1 if the table has no usable column
+    private static int partitionColumnIndex(Connection connection, String table, ResultSetMetaData meta, String requested) throws SQLException {
+        if (requested != null) {
+            for (int i = 1; i <= meta.getColumnCount(); i++) {
+                if (meta.getColumnName(i).equalsIgnoreCase(requested)) {
+                    if (!isPartitionable(meta.getColumnType(i))) {
+                        throw new IllegalArgumentException("Column " + requested + " of " + table
+                                + " is not numeric, date or timestamp: " + meta.getColumnTypeName(i));
+                    }
+                    return i;
+                }
+            }
+            throw new IllegalArgumentException("No column " + requested + " in " + table);
+        }
+        Set<String> primaryKey = primaryKey(connection, table);
+        int firstUsable = -1;
+        for (int i = 1; i <= meta.getColumnCount(); i++) {
+            if (!isPartitionable(meta.getColumnType(i))) {
+                continue;
+            }
+            if (primaryKey.contains(meta.getColumnName(i).toUpperCase())) {
+                return i;
+            }
+            if (firstUsable < 0) {
+                firstUsable = i;
+            }
+        }
+        return firstUsable;
+    }
+
+    private static Set<String> primaryKey(Connection connection, String table) throws SQLException {
+        DatabaseMetaData meta = connection.getMetaData();
+        int dot = table.lastIndexOf('.');
+        String schema = dot < 0 ? null : table.substring(0, dot);
+        String name = dot < 0 ? table : table.substring(dot + 1);
+        // Catalogs differ in how they store unquoted names, so try the name as given, then upper and lower case
+        String[][] candidates = {
+                {schema, name},
+                {schema == null ? null : schema.toUpperCase(), name.toUpperCase()},
+                {schema == null ? null : schema.toLowerCase(), name.toLowerCase()}
+        };
+        Set<String> columns = new HashSet<>();
+        for (String[] candidate : candidates) {
+            try (ResultSet rs = meta.getPrimaryKeys(null, candidate[0], candidate[1])) {
+                while (rs.next()) {
+                    columns.add(rs.getString("COLUMN_NAME").toUpperCase());
+                }
+            }
+            if (!columns.isEmpty()) {
+                break;
+            }
+        }
+        return columns;
+    }
+
+    private static boolean isPartitionable(int type) {
+        return switch (type) {
+            case Types.TINYINT, Types.SMALLINT, Types.INTEGER, Types.BIGINT, Types.NUMERIC, Types.DECIMAL,
+                 Types.DATE, Types.TIMESTAMP, Types.TIMESTAMP_WITH_TIMEZONE -> true;
+            default -> false;
+        };
+    }
+
+    // Spark parses numeric bounds as longs and date/timestamp bounds as ISO strings
+    private static String bound(ResultSet rs, int index, int type, RoundingMode rounding) throws SQLException {
+        return switch (type) {
+            case Types.DATE -> rs.getDate(index).toLocalDate().toString();
+            case Types.TIMESTAMP, Types.TIMESTAMP_WITH_TIMEZONE -> rs.getTimestamp(index).toLocalDateTime().toString();
+            default -> rs.getBigDecimal(index).setScale(0, rounding).toBigInteger().toString();
+        };
+    }
+
+    private int fetchSize(ResultSetMetaData meta) throws SQLException {
+        String configured = properties.getProperty("fetchsize");
+        if (configured != null) {
+            return Integer.parseInt(configured);
+        }
+        long rowBytes = 0;
+        for (int i = 1; i <= meta.getColumnCount(); i++) {
+            rowBytes += estimatedBytes(meta.getColumnType(i), meta.getPrecision(i));
+        }
+        return (int) Math.max(MIN_FETCH_SIZE, Math.min(MAX_FETCH_SIZE, TARGET_FETCH_BYTES / Math.max(1, rowBytes)));
+    }
+
+    private static int estimatedBytes(int type, int precision) {
+        return switch (type) {
+            case Types.BIT, Types.BOOLEAN, Types.TINYINT -> 1;
+            case Types.SMALLINT -> 2;
+            case Types.INTEGER, Types.REAL, Types.DATE -> 4;
+            case Types.BIGINT, Types.DOUBLE, Types.FLOAT, Types.TIMESTAMP, Types.TIMESTAMP_WITH_TIMEZONE -> 8;
+            case Types.NUMERIC, Types.DECIMAL -> 16;
+            // Variable width columns rarely come close to their declared size
+            case Types.CHAR, Types.NCHAR -> precision > 0 ? Math.min(precision, 256) : 32;
+            case Types.VARCHAR, Types.NVARCHAR, Types.LONGVARCHAR, Types.BINARY, Types.VARBINARY ->
+                    precision > 0 ? Math.min(precision / 2 + 1, 256) : 64;
+            case Types.CLOB, Types.BLOB, Types.LONGVARBINARY -> 4096;
+            default -> 16;
+        };
+    }
+
+    private static long count(Statement statement, String sql) throws SQLException {
+        try (ResultSet rs = statement.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    /**
+     * Reads every row of the given JDBC dataset and returns, per partition (that is, per connection),
+     * the rows fetched and the task time, taken from the task metrics so that opening the connection
+     * and running the query are included.
+     */
+    public List<ConnectionStats> measure(Dataset<Row> df) {
+        String group = "jdbc-measure-" + UUID.randomUUID();
+        Set<Integer> stages = ConcurrentHashMap.newKeySet();
+        Set<Integer> jobs = ConcurrentHashMap.newKeySet();
+        // Task end events of a job are always delivered before its job end event
+        CountDownLatch jobEnded = new CountDownLatch(1);
+        List<ConnectionStats> stats = new ArrayList<>();
+        SparkListener listener = new SparkListener() {
+            @Override
+            public void onJobStart(SparkListenerJobStart jobStart) {
+                if (jobStart.properties() != null && group.equals(jobStart.properties().getProperty(JOB_GROUP_ID))) {
+                    jobs.add(jobStart.jobId());
+                    for (Object stageId : JavaConverters.seqAsJavaList(jobStart.stageIds())) {
+                        stages.add((Integer) stageId);
+                    }
+                }
+            }
+
+            @Override
+            public void onTaskEnd(SparkListenerTaskEnd taskEnd) {
+                if (stages.contains(taskEnd.stageId()) && taskEnd.taskMetrics() != null && taskEnd.taskInfo().successful()) {
+                    synchronized (stats) {
+                        stats.add(new ConnectionStats(taskEnd.taskInfo().index(),
+                                taskEnd.taskMetrics().inputMetrics().recordsRead(), taskEnd.taskInfo().duration()));
+                    }
+                }
+            }
+
+            @Override
+            public void onJobEnd(SparkListenerJobEnd jobEnd) {
+                if (jobs.contains(jobEnd.jobId())) {
+                    jobEnded.countDown();
+                }
+            }
+        };
+        SparkContext sc = spark.sparkContext();
+        // setJobGroup replaces the caller's group, so it is put back afterwards
+        Map<String, String> previous = new HashMap<>();
+        for (String key : List.of(JOB_GROUP_ID, JOB_DESCRIPTION, JOB_INTERRUPT_ON_CANCEL)) {
+            previous.put(key, sc.getLocalProperty(key));
+        }
+        sc.addSparkListener(listener);
+        sc.setJobGroup(group, "Measure JDBC read", false);
+        try {
+            df.javaRDD().foreachPartition(rows -> {
+                while (rows.hasNext()) {
+                    rows.next();
+                }
+            });
+            if (!jobEnded.await(LISTENER_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Task metrics did not arrive within " + LISTENER_TIMEOUT_SECONDS + " s");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for task metrics", e);
+        } finally {
+            previous.forEach(sc::setLocalProperty);
+            sc.removeSparkListener(listener);
+        }
+        synchronized (stats) {
+            stats.sort(Comparator.comparingInt(ConnectionStats::partition));
+            return new ArrayList<>(stats);
+        }
+    }
+
+    public static String report(Plan plan, List<ConnectionStats> stats) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%s: %d rows, partitionColumn=%s, bounds=[%s, %s], numPartitions=%d, fetchsize=%d%n",
+                plan.table(), plan.rowCount(), plan.partitionColumn(), plan.lowerBound(), plan.upperBound(),
+                plan.numPartitions(), plan.fetchSize()));
+        sb.append(String.format("%-10s %12s %10s %14s%n", "partition", "rows", "ms", "rows/sec"));
+        long rows = 0;
+        long wallMillis = 0;
+        for (ConnectionStats s : stats) {
+            sb.append(String.format("%-10d %12d %10d %14.0f%n", s.partition(), s.rows(), s.millis(), s.rowsPerSecond()));
+            rows += s.rows();
+            wallMillis = Math.max(wallMillis, s.millis());
+        }
+        sb.append(String.format("%-10s %12d %10d %14.0f%n", "total", rows, wallMillis,
+                wallMillis == 0 ? 0.0 : rows * 1000.0 / wallMillis));
+        return sb.toString();
+    }
+
+    // Usage: JdbcPartitionedReader <url> <table> [partitionColumn] [user] [password]
+    public static void main(String[] args) throws SQLException {
+        if (args.length < 2) {
+            System.err.println("Usage: JdbcPartitionedReader <url> <table> [partitionColumn] [user] [password]");
+            System.exit(1);
+        }
+        SparkSession spark = SparkSession.builder()
+                .appName("JdbcPartitionedReader")
+                .master("local[*]")
+                .getOrCreate();
+        Properties properties = new Properties();
+        if (args.length > 3) {
+            properties.put("user", args[3]);
+        }
+        if (args.length > 4) {
+            properties.put("password", args[4]);
+        }
+        JdbcPartitionedReader reader = new JdbcPartitionedReader(spark, args[0], properties);
+        Plan plan = reader.plan(args[1], args.length > 2 ? args[2] : null);
+        System.out.print(report(plan, reader.measure(reader.read(plan))));
+        spark.stop();
+    }
+}
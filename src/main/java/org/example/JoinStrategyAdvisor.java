@@ -0,0 +1,253 @@
+package org.example;
+
+import org.apache.spark.examples.sql.hive.JavaSparkHiveExample;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SaveMode;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.catalyst.plans.ExistenceJoin;
+import org.apache.spark.sql.catalyst.plans.InnerLike;
+import org.apache.spark.sql.catalyst.plans.JoinType;
+import org.apache.spark.sql.catalyst.plans.LeftAnti$;
+import org.apache.spark.sql.catalyst.plans.LeftOuter$;
+import org.apache.spark.sql.catalyst.plans.LeftSemi$;
+import org.apache.spark.sql.catalyst.plans.RightOuter$;
+import org.apache.spark.sql.catalyst.plans.logical.BROADCAST$;
+import org.apache.spark.sql.catalyst.plans.logical.HintInfo;
+import org.apache.spark.sql.catalyst.plans.logical.Join;
+import org.apache.spark.sql.catalyst.plans.logical.JoinHint;
+import org.apache.spark.sql.catalyst.plans.logical.JoinStrategyHint;
+import org.apache.spark.sql.catalyst.plans.logical.LogicalPlan;
+import org.apache.spark.sql.catalyst.rules.Rule;
+import org.apache.spark.sql.execution.SparkPlan;
+import org.apache.spark.sql.execution.adaptive.AdaptiveSparkPlanExec;
+import org.apache.spark.sql.execution.adaptive.QueryStageExec;
+import org.apache.spark.sql.execution.joins.BaseJoinExec;
+import scala.Option;
+import scala.collection.JavaConverters;
+import scala.collection.Seq;
+import scala.math.BigInt;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Optimizer rule that adds a broadcast hint to joins whose smaller buildable side is estimated below
+ * {@code maxBroadcastBytes}, independently of {@code spark.sql.autoBroadcastJoinThreshold}, which the
+ * tests set to -1 so that every join becomes a sort-merge join with two shuffles. Sizes come from the
+ * optimized plan's statistics: row count times row size for {@code createDataFrame} local relations,
+ * file sizes for file tables, and catalog statistics (see {@link ColumnarTableLoader}) for Hive tables,
+ * whose size is otherwise unknown and never broadcast. Only sides the join type can build are
+ * considered, and joins that already carry a hint are left alone.
+ * {@link #install} adds the rule to the session's extra optimizations; {@link #compare} runs a query
+ * with and without it and reports the join operators and times.
+ */
+public class JoinStrategyAdvisor extends Rule<LogicalPlan> {
+
+    public static final long DEFAULT_MAX_BROADCAST_BYTES = 10L * 1024 * 1024;
+    private static final Option<HintInfo> BROADCAST_HINT =
+            Option.apply(new HintInfo(Option.<JoinStrategyHint>apply(BROADCAST$.MODULE$)));
+
+    public enum Side { LEFT, RIGHT, NONE }
+
+    public record Advice(String joinType, long leftBytes, long rightBytes, Side broadcast) {
+    }
+
+    public record Comparison(List<String> joinsBefore, List<String> joinsAfter, String planBefore, String planAfter,
+                             long millisBefore, long millisAfter) {
+    }
+
+    private final long maxBroadcastBytes;
+    private final LongAdder hinted = new LongAdder();
+
+    public JoinStrategyAdvisor(long maxBroadcastBytes) {
+        this.maxBroadcastBytes = maxBroadcastBytes;
+    }
+
+    public static JoinStrategyAdvisor install(SparkSession spark) {
+        return install(spark, DEFAULT_MAX_BROADCAST_BYTES);
+    }
+
+    // Replaces an advisor installed earlier, so the threshold can be changed
+    public static JoinStrategyAdvisor install(SparkSession spark, long maxBroadcastBytes) {
+        JoinStrategyAdvisor advisor = new JoinStrategyAdvisor(maxBroadcastBytes);
+        List<Rule<LogicalPlan>> rules = otherRules(spark);
+        rules.add(advisor);
+        spark.experimental().extraOptimizations_$eq(JavaConverters.asScalaBuffer(rules).toSeq());
+        return advisor;
+    }
+
+    public static void uninstall(SparkSession spark) {
+        spark.experimental().extraOptimizations_$eq(JavaConverters.asScalaBuffer(otherRules(spark)).toSeq());
+    }
+
+    private static List<Rule<LogicalPlan>> otherRules(SparkSession spark) {
+        List<Rule<LogicalPlan>> rules = new ArrayList<>(JavaConverters.seqAsJavaList(spark.experimental().extraOptimizations()));
+        rules.removeIf(rule -> rule instanceof JoinStrategyAdvisor);
+        return rules;
+    }
+
+    @Override
+    public LogicalPlan apply(LogicalPlan plan) {
+        List<LogicalPlan> children = new ArrayList<>();
+        boolean changed = false;
+        for (LogicalPlan child : JavaConverters.seqAsJavaList(plan.children())) {
+            LogicalPlan rewritten = apply(child);
+            changed |= rewritten != child;
+            children.add(rewritten);
+        }
+        LogicalPlan node = changed ? plan.withNewChildren(JavaConverters.asScalaBuffer(children).toSeq()) : plan;
+        if (!(node instanceof Join join) || join.hint().leftHint().isDefined() || join.hint().rightHint().isDefined()) {
+            return node;
+        }
+        Side side = advise(join).broadcast();
+        if (side == Side.NONE) {
+            return node;
+        }
+        hinted.increment();
+        JoinHint hint = side == Side.LEFT
+                ? new JoinHint(BROADCAST_HINT, join.hint().rightHint())
+                : new JoinHint(join.hint().leftHint(), BROADCAST_HINT);
+        return join.copy(join.left(), join.right(), join.joinType(), join.condition(), hint);
+    }
+
+    // Number of joins this advisor has hinted, counting every optimization of every query
+    public long hintedJoins() {
+        return hinted.sum();
+    }
+
+    public Advice advise(Join join) {
+        JoinType type = join.joinType();
+        long left = bytes(join.left());
+        long right = bytes(join.right());
+        boolean buildLeft = canBuildLeft(type) && left <= maxBroadcastBytes;
+        boolean buildRight = canBuildRight(type) && right <= maxBroadcastBytes;
+        Side side = buildLeft && buildRight ? (left < right ? Side.LEFT : Side.RIGHT)
+                : buildLeft ? Side.LEFT
+                : buildRight ? Side.RIGHT
+                : Side.NONE;
+        return new Advice(type.sql(), left, right, side);
+    }
+
+    // Advice for every join in the query, top-down, without changing it
+    public List<Advice> advise(Dataset<?> query) {
+        List<Advice> advice = new ArrayList<>();
+        joins(query.queryExecution().optimizedPlan(), join -> advice.add(advise(join)));
+        return advice;
+    }
+
+    private static void joins(LogicalPlan plan, Consumer<Join> action) {
+        if (plan instanceof Join join) {
+            action.accept(join);
+        }
+        for (LogicalPlan child : JavaConverters.seqAsJavaList(plan.children())) {
+            joins(child, action);
+        }
+    }
+
+    private static long bytes(LogicalPlan plan) {
+        BigInt size = plan.stats().sizeInBytes();
+        return size.isValidLong() ? size.longValue() : Long.MAX_VALUE;
+    }
+
+    // Same rules as Spark's JoinSelectionHelper: the build side of an outer join must be the inner side
+    private static boolean canBuildLeft(JoinType type) {
+        return type instanceof InnerLike || type == RightOuter$.MODULE$;
+    }
+
+    private static boolean canBuildRight(JoinType type) {
+        return type instanceof InnerLike || type instanceof ExistenceJoin
+                || type == LeftOuter$.MODULE$ || type == LeftSemi$.MODULE$ || type == LeftAnti$.MODULE$;
+    }
+
+    public static Comparison compare(SparkSession spark, String sql) {
+        return compare(spark, sql, DEFAULT_MAX_BROADCAST_BYTES);
+    }
+
+    // Runs the query once without and once with the advisor; the session's rules are restored afterwards
+    public static Comparison compare(SparkSession spark, String sql, long maxBroadcastBytes) {
+        Seq<Rule<LogicalPlan>> saved = spark.experimental().extraOptimizations();
+        try {
+            uninstall(spark);
+            Dataset<Row> before = spark.sql(sql);
+            long millisBefore = run(before);
+            // Planned now, since optimization is lazy and would otherwise see the advisor
+            List<String> joinsBefore = joinOperators(before);
+            String planBefore = before.queryExecution().executedPlan().treeString();
+            install(spark, maxBroadcastBytes);
+            Dataset<Row> after = spark.sql(sql);
+            long millisAfter = run(after);
+            return new Comparison(joinsBefore, joinOperators(after),
+                    planBefore, after.queryExecution().executedPlan().treeString(),
+                    millisBefore, millisAfter);
+        } finally {
+            spark.experimental().extraOptimizations_$eq(saved);
+        }
+    }
+
+    private static long run(Dataset<Row> query) {
+        long start = System.nanoTime();
+        query.write().format("noop").mode(SaveMode.Overwrite).save();
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    public static List<String> joinOperators(Dataset<?> query) {
+        List<String> names = new ArrayList<>();
+        joinOperators(query.queryExecution().executedPlan(), names);
+        return names;
+    }
+
+    private static void joinOperators(SparkPlan plan, List<String> names) {
+        if (plan instanceof AdaptiveSparkPlanExec adaptive) {
+            joinOperators(adaptive.executedPlan(), names);
+            return;
+        }
+        if (plan instanceof QueryStageExec stage) {
+            joinOperators(stage.plan(), names);
+            return;
+        }
+        if (plan instanceof BaseJoinExec) {
+            names.add(plan.nodeName());
+        }
+        for (SparkPlan child : JavaConverters.seqAsJavaList(plan.children())) {
+            joinOperators(child, names);
+        }
+    }
+
+    // Usage: JoinStrategyAdvisor [srcRows]; joins 99 records with src as in JavaSparkHiveExample
+    public static void main(String[] args) throws IOException {
+        long rows = args.length > 0 ? Long.parseLong(args[0]) : 20_000_000;
+        Path dir = Files.createTempDirectory("join-advisor");
+        SparkSession spark = SparkSession.builder()
+                .appName("JoinStrategyAdvisor")
+                .master("local[*]")
+                .config("spark.sql.warehouse.dir", dir.toString())
+                // As in the tests
+                .config("spark.sql.autoBroadcastJoinThreshold", "-1")
+                .getOrCreate();
+        spark.range(rows)
+                .selectExpr("CAST(id % 500 AS INT) AS key", "concat('val_', id % 500) AS value")
+                .write().saveAsTable("src");
+        List<JavaSparkHiveExample.Record> records = new ArrayList<>();
+        for (int key = 1; key < 100; key++) {
+            JavaSparkHiveExample.Record record = new JavaSparkHiveExample.Record();
+            record.setKey(key);
+            record.setValue("val_" + key);
+            records.add(record);
+        }
+        spark.createDataFrame(records, JavaSparkHiveExample.Record.class)
+                .createOrReplaceTempView("records");
+
+        String sql = "SELECT * FROM records r JOIN src s ON r.key = s.key";
+        System.out.println(new JoinStrategyAdvisor(DEFAULT_MAX_BROADCAST_BYTES).advise(spark.sql(sql)));
+        Comparison comparison = compare(spark, sql);
+        System.out.printf("without advisor: %s %d ms%n%s%n", comparison.joinsBefore(), comparison.millisBefore(), comparison.planBefore());
+        System.out.printf("with advisor:    %s %d ms%n%s%n", comparison.joinsAfter(), comparison.millisAfter(), comparison.planAfter());
+        spark.stop();
+    }
+}
@@ -0,0 +1,77 @@
+package org.example;
+
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SaveMode;
+import org.apache.spark.sql.SparkSession;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.apache.spark.sql.functions.col;
+import static org.apache.spark.sql.functions.length;
+import static org.apache.spark.sql.functions.sum;
+
+/**
+ * Scans the same local text with {@code sc.textFile}, {@code spark.read().text} and
+ * {@link MappedTextSource}: once summing line lengths and once filtering on a substring, which
+ * the mapped source answers on the raw bytes. Reports time and MB/s.
+ * Usage: MappedTextBenchmark [lines] (defaults to 30M, about 2 GB)
+ */
+public class MappedTextBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        long lines = args.length > 0 ? Long.parseLong(args[0]) : 30_000_000L;
+        String path = Files.createTempDirectory("mapped-text-benchmark").toString() + "/data";
+
+        SparkSession spark = SparkSession.builder()
+                .appName("MappedTextBenchmark")
+                .master("local[*]")
+                .getOrCreate();
+        JavaSparkContext sc = JavaSparkContext.fromSparkContext(spark.sparkContext());
+
+        spark.range(lines)
+                .selectExpr("concat_ws(' ', concat('word', id % 1000), concat('word', id % 7919), cast(rand(1) AS STRING)) AS value")
+                .write()
+                .mode(SaveMode.Overwrite)
+                .text(path);
+        long bytes = 0;
+        for (File file : new File(path).listFiles((dir, name) -> name.startsWith("part-"))) {
+            bytes += file.length();
+        }
+
+        for (int run = 0; run < 2; run++) {
+            long start = System.nanoTime();
+            long total = sc.textFile(path).map(String::length).reduce(Integer::sum);
+            report("textFile length", total, bytes, start);
+
+            start = System.nanoTime();
+            total = spark.read().text(path).agg(sum(length(col("value")))).first().getLong(0);
+            report("read().text length", total, bytes, start);
+
+            start = System.nanoTime();
+            total = MappedTextSource.read(spark, path).agg(sum(length(col("value")))).first().getLong(0);
+            report("mapped length", total, bytes, start);
+
+            start = System.nanoTime();
+            total = sc.textFile(path).filter(line -> line.contains("word42 ")).count();
+            report("textFile filter", total, bytes, start);
+
+            start = System.nanoTime();
+            total = spark.read().text(path).where(col("value").contains("word42 ")).count();
+            report("read().text filter", total, bytes, start);
+
+            start = System.nanoTime();
+            Dataset<Row> mapped = MappedTextSource.read(spark, path);
+            total = mapped.where(col("value").contains("word42 ")).count();
+            report("mapped filter", total, bytes, start);
+        }
+        spark.stop();
+    }
+
+    private static void report(String name, long result, long bytes, long start) {
+        long ms = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        System.out.printf("%-20s %8d ms %8.1f MB/s  (%d)%n", name, ms, bytes / 1e6 / (ms / 1000.0), result);
+    }
+}
@@ -0,0 +1,163 @@
+package org.example;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.catalyst.InternalRow;
+import org.apache.spark.sql.catalyst.expressions.GenericInternalRow;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.StructType;
+import org.apache.spark.unsafe.types.UTF8String;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Text source for files on local disk, as an alternative to {@code textFile}/{@code read().text()}
+ * which copy every line into a Hadoop {@code Text} and, for {@code textFile}, decode it into a String.
+ * Each task memory-maps its file range and returns every line as a {@code value} column: the line's bytes
+ * are copied out of the mapping into one reused buffer and wrapped in a UTF8String over it, so there is
+ * no {@code read()} copy, no allocation per line, and no decoding unless an expression needs a String.
+ * It is one copy rather than none: a UTF8String points at a byte[] or a raw address, the address of a
+ * mapped buffer is JDK-internal, and the scan copies every row into an UnsafeRow straight away anyway.
+ * Ranges are planned like {@link FileRanges}; compressed and non-local files are rejected.
+ * Line terminators are {@code \n} and {@code \r\n}.
+ */
+public class MappedTextSource {
+
+    private static final StructType SCHEMA = new StructType().add("value", DataTypes.StringType, false);
+    // Extra bytes mapped past a range to finish its last line; grown when a line is longer
+    private static final long LINE_SLACK = 1 << 20;
+
+    public static Dataset<Row> read(SparkSession spark, String path) throws IOException {
+        return read(spark, path, spark.sessionState().conf().filesMaxPartitionBytes());
+    }
+
+    public static Dataset<Row> read(SparkSession spark, String path, long maxSplitBytes) throws IOException {
+        List<FileRanges.Range> ranges = FileRanges.plan(spark.sparkContext().hadoopConfiguration(), path, maxSplitBytes);
+        for (FileRanges.Range range : ranges) {
+            if (range.compressed() || !"file".equals(new Path(range.path()).toUri().getScheme())) {
+                throw new IllegalArgumentException("Only uncompressed local files can be memory-mapped: " + range.path());
+            }
+        }
+        JavaRDD<InternalRow> rows = JavaSparkContext.fromSparkContext(spark.sparkContext())
+                .parallelize(ranges, Math.max(1, ranges.size()))
+                .mapPartitions(it -> it.hasNext()
+                        ? new LineIterator(it.next())
+                        : Collections.<InternalRow>emptyIterator());
+        return ColumnarRows.toDataFrame(spark, rows.rdd(), SCHEMA);
+    }
+
+    private static class LineIterator implements Iterator<InternalRow> {
+        private final FileChannel channel;
+        private final long fileLength;
+        private final long end;
+        private final GenericInternalRow row = new GenericInternalRow(1);
+        private byte[] line = new byte[256];
+        private MappedByteBuffer mapped;
+        private long mapStart;
+        private long mapEnd;
+        private long position;
+        private UTF8String next;
+
+        LineIterator(FileRanges.Range range) throws IOException {
+            this.channel = FileChannel.open(Paths.get(new Path(range.path()).toUri()), StandardOpenOption.READ);
+            ColumnarRows.closeOnTaskCompletion(channel);
+            this.fileLength = channel.size();
+            this.end = range.end();
+            long start = range.start();
+            map(Math.max(0, start - 1), Math.min(fileLength, end + LINE_SLACK));
+            position = start;
+            if (start > 0 && byteAt(start - 1) != '\n') {
+                // The line that started in the previous range is not ours
+                long newline = find(start);
+                position = newline < 0 ? fileLength : newline + 1;
+            }
+        }
+
+        private void map(long from, long to) throws IOException {
+            if (to - from > Integer.MAX_VALUE) {
+                throw new IOException("Line too long to map past offset " + from);
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+            mapStart = from;
+            mapEnd = to;
+        }
+
+        private byte byteAt(long offset) {
+            return mapped.get((int) (offset - mapStart));
+        }
+
+        // Offset of the next '\n' at or after from, remapping past the window if needed; -1 at end of file
+        private long find(long from) throws IOException {
+            long i = from;
+            while (true) {
+                for (; i < mapEnd; i++) {
+                    if (byteAt(i) == '\n') {
+                        return i;
+                    }
+                }
+                if (mapEnd == fileLength) {
+                    return -1;
+                }
+                map(from, Math.min(fileLength, mapEnd + Math.max(LINE_SLACK, mapEnd - mapStart)));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            if (position >= end || position >= fileLength) {
+                close();
+                return false;
+            }
+            try {
+                long newline = find(position);
+                long lineEnd = newline < 0 ? fileLength : newline;
+                long contentEnd = lineEnd > position && byteAt(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+                int length = (int) (contentEnd - position);
+                if (line.length < length) {
+                    line = new byte[Math.max(length, line.length * 2)];
+                }
+                mapped.get((int) (position - mapStart), line, 0, length);
+                // A view over the reused buffer, valid until the next line, like the reused row
+                next = UTF8String.fromBytes(line, 0, length);
+                position = lineEnd + 1;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return true;
+        }
+
+        @Override
+        public InternalRow next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            row.update(0, next);
+            next = null;
+            return row;
+        }
+
+        private void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
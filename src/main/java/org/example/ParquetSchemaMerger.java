@@ -0,0 +1,198 @@
+package org.example;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.FileMetaData;
+import org.apache.parquet.hadoop.util.HadoopInputFile;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.execution.datasources.parquet.ParquetToSparkSchemaConverter;
+import org.apache.spark.sql.types.ArrayType;
+import org.apache.spark.sql.types.DataType;
+import org.apache.spark.sql.types.MapType;
+import org.apache.spark.sql.types.StructField;
+import org.apache.spark.sql.types.StructType;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Replacement for {@code option("mergeSchema", true)} on Parquet tables. Footers are read on a bounded
+ * thread pool instead of serially, each footer's schema is fingerprinted (Spark's own schema from the
+ * footer metadata when present, the Parquet schema otherwise), and only one schema per distinct
+ * fingerprint is converted and merged; a table whose files all share a fingerprint skips merging entirely.
+ * Merged schemas are cached by a digest of the file set (path, size, mtime), keeping the
+ * {@value #CACHE_SIZE} most recently used, and the read passes the schema to Spark so planning does
+ * no footer work of its own.
+ */
+public class ParquetSchemaMerger {
+
+    private static final String SPARK_SCHEMA_KEY = "org.apache.spark.sql.parquet.row.metadata";
+
+    static final int CACHE_SIZE = 256;
+
+    private static final Map<String, StructType> cache = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, StructType> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            });
+
+    private final SparkSession spark;
+    private final int parallelism;
+
+    public ParquetSchemaMerger(SparkSession spark, int parallelism) {
+        this.spark = spark;
+        this.parallelism = parallelism;
+    }
+
+    public Dataset<Row> read(String path) throws IOException {
+        return spark.read().schema(mergedSchema(path)).parquet(path);
+    }
+
+    public StructType mergedSchema(String path) throws IOException {
+        Configuration conf = spark.sparkContext().hadoopConfiguration();
+        Path root = new Path(path);
+        FileSystem fs = root.getFileSystem(conf);
+
+        List<LocatedFileStatus> files = new ArrayList<>();
+        RemoteIterator<LocatedFileStatus> it = fs.listFiles(root, true);
+        while (it.hasNext()) {
+            LocatedFileStatus status = it.next();
+            if (isDataFile(root, status.getPath())) {
+                files.add(status);
+            }
+        }
+        files.sort((a, b) -> a.getPath().compareTo(b.getPath()));
+        if (files.isEmpty()) {
+            // Spark's own "Unable to infer schema for Parquet" error
+            return spark.read().parquet(path).schema();
+        }
+
+        String key = fileSetDigest(files);
+        StructType cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        // One representative footer per distinct schema fingerprint
+        Map<String, FileMetaData> schemas = new LinkedHashMap<>();
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<Future<FileMetaData>> futures = new ArrayList<>();
+            for (LocatedFileStatus file : files) {
+                futures.add(pool.submit(() -> {
+                    try (ParquetFileReader reader = ParquetFileReader.open(HadoopInputFile.fromStatus(file, conf))) {
+                        return reader.getFooter().getFileMetaData();
+                    }
+                }));
+            }
+            for (Future<FileMetaData> future : futures) {
+                FileMetaData footer = future.get();
+                schemas.putIfAbsent(fingerprint(footer), footer);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException("Could not read Parquet footer", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        StructType merged = new StructType();
+        ParquetToSparkSchemaConverter converter = new ParquetToSparkSchemaConverter(spark.sessionState().conf());
+        for (FileMetaData footer : schemas.values()) {
+            String sparkSchema = footer.getKeyValueMetaData().get(SPARK_SCHEMA_KEY);
+            StructType schema = sparkSchema != null
+                    ? (StructType) DataType.fromJson(sparkSchema)
+                    : converter.convert(footer.getSchema());
+            merged = schemas.size() == 1 ? schema : merge(merged, schema);
+        }
+        cache.put(key, merged);
+        return merged;
+    }
+
+    private static String fingerprint(FileMetaData footer) {
+        String sparkSchema = footer.getKeyValueMetaData().get(SPARK_SCHEMA_KEY);
+        return sparkSchema != null ? sparkSchema : footer.getSchema().toString();
+    }
+
+    // Union of the fields by name, recursing into structs, also inside arrays and maps; other type
+    // conflicts fail like mergeSchema does
+    static StructType merge(StructType left, StructType right) {
+        Map<String, StructField> fields = new LinkedHashMap<>();
+        for (StructField field : left.fields()) {
+            fields.put(field.name(), field);
+        }
+        for (StructField field : right.fields()) {
+            StructField existing = fields.get(field.name());
+            if (existing == null) {
+                fields.put(field.name(), field);
+            } else {
+                DataType type = merge(field.name(), existing.dataType(), field.dataType());
+                fields.put(field.name(), new StructField(field.name(), type, true, existing.metadata()));
+            }
+        }
+        // A column missing from some files reads as null there, and Spark reads Parquet columns as nullable anyway
+        List<StructField> merged = new ArrayList<>();
+        for (StructField field : fields.values()) {
+            merged.add(new StructField(field.name(), field.dataType(), true, field.metadata()));
+        }
+        return new StructType(merged.toArray(new StructField[0]));
+    }
+
+    private static DataType merge(String name, DataType left, DataType right) {
+        if (left instanceof StructType l && right instanceof StructType r) {
+            return merge(l, r);
+        }
+        if (left instanceof ArrayType l && right instanceof ArrayType r) {
+            return new ArrayType(merge(name, l.elementType(), r.elementType()), l.containsNull() || r.containsNull());
+        }
+        if (left instanceof MapType l && right instanceof MapType r) {
+            return new MapType(merge(name, l.keyType(), r.keyType()), merge(name, l.valueType(), r.valueType()),
+                    l.valueContainsNull() || r.valueContainsNull());
+        }
+        if (!left.equals(right)) {
+            throw new IllegalStateException(String.format("Failed to merge field '%s': %s and %s",
+                    name, left.simpleString(), right.simpleString()));
+        }
+        return left;
+    }
+
+    // Every file Spark would read, whatever its name; a file that is not Parquet fails the footer read like it fails Spark's scan
+    private static boolean isDataFile(Path root, Path path) {
+        return !FileRanges.isHidden(root, path);
+    }
+
+    private static String fileSetDigest(List<LocatedFileStatus> files) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (LocatedFileStatus file : files) {
+                digest.update((file.getPath() + "\t" + file.getLen() + "\t" + file.getModificationTime() + "\n")
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
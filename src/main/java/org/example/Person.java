@@ -1,11 +1,14 @@
 package org.example;
 
 import org.apache.spark.api.java.function.MapFunction;
+import org.apache.spark.sql.Column;
 import org.apache.spark.sql.Row;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
+import static org.apache.spark.sql.functions.col;
+
 public class Person {
         private String name;
         private Integer age; // Integer to allow for null values
@@ -68,4 +71,11 @@ public class Person {
             return person;
         };
 
-    }
\ No newline at end of file
+    // Column form of `person.getAge() != null && person.getAge() > age` on the raw string age column.
+    // Applied before mapper, the IsNotNull part is pushed into the JSON/CSV scan and the rest runs
+    // ahead of deserialization, so only matching rows are turned into Person objects.
+    public static Column ageGreaterThan(int age) {
+        return col("age").isNotNull().and(col("age").cast("int").gt(age));
+    }
+
+    }
@@ -5,6 +5,7 @@ import org.apache.spark.api.java.function.MapFunction;
 import org.apache.spark.sql.*;
 import org.apache.spark.sql.Encoders;
 import org.apache.spark.sql.types.StructType;
+import org.apache.spark.util.LongAccumulator;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -26,6 +27,8 @@ public class PersonDatasetExample {
 
         processDataset(spark, jsonFilePath);
         processDataframe(spark, jsonFilePath);
+        processDatasetNative(spark, jsonFilePath);
+        processDatasetPushdown(spark, jsonFilePath);
 
     }
 
@@ -33,8 +36,7 @@ public class PersonDatasetExample {
 
         System.out.println("===============processDataframe()=================");
 
-        Dataset<Row> peopleDataFrame = spark.read()
-                .json(jsonFilePath);
+        Dataset<Row> peopleDataFrame = SchemaRegistry.readJson(spark, jsonFilePath);
 
         peopleDataFrame.show();
 
@@ -48,9 +50,8 @@ public class PersonDatasetExample {
 
         System.out.println("=================processDataset()=====================");
 
-        System.out.println("Reading JSON file without any specified schema:");
-        Dataset<Row> df = spark.read()
-                .json(jsonFilePath);
+        System.out.println("Reading JSON file with the schema inferred once and cached by SchemaRegistry:");
+        Dataset<Row> df = SchemaRegistry.readJson(spark, jsonFilePath);
         df.printSchema();
         df.show();
 
@@ -102,7 +103,69 @@ public class PersonDatasetExample {
 
     }
 
+    private static void processDatasetNative(SparkSession spark, String jsonFilePath) {
 
-}
+        System.out.println("=================processDatasetNative()=====================");
 
+        StructType schema = new StructType()
+                .add("name", "string")
+                .add("age", "string")
+                .add("hire_date", "string");
+
+        Dataset<Row> df = spark.read()
+                .schema(schema)
+                .json(jsonFilePath);
+
+        System.out.println("Converting to Dataset of User objects with column expressions (no MapFunction):");
+        Dataset<User> usersDataset = User.fromRaw(df);
+        usersDataset.printSchema();
+        usersDataset.show();
+
+        System.out.println("Filtering on the age column before the objects are materialized:");
+        Dataset<User> filteredDataset = User.fromRaw(df).filter(col("age").gt(20));
+        filteredDataset.explain();
+        filteredDataset.show();
+
+    }
 
+    private static void processDatasetPushdown(SparkSession spark, String jsonFilePath) {
+
+        System.out.println("=================processDatasetPushdown()=====================");
+
+        StructType schema = new StructType()
+                .add("name", "string")
+                .add("age", "string")
+                .add("hire_date", "string");
+
+        Dataset<Row> df = spark.read()
+                .schema(schema)
+                .json(jsonFilePath);
+
+        System.out.println("Typed filter after mapping (every row is deserialized):");
+        LongAccumulator mappedBeforeFilter = spark.sparkContext().longAccumulator("mapped before filter");
+        Dataset<Person> typedFiltered = df
+                .map((MapFunction<Row, Person>) row -> {
+                    mappedBeforeFilter.add(1);
+                    return mapper.call(row);
+                }, Encoders.bean(Person.class))
+                .filter((FilterFunction<Person>) person -> person.getAge() != null && person.getAge() > 20);
+        typedFiltered.explain();
+        typedFiltered.show();
+        System.out.printf("rows deserialized: %d%n", mappedBeforeFilter.value());
+
+        System.out.println("Column filter before mapping (IsNotNull(age) pushed into the scan):");
+        LongAccumulator mappedAfterFilter = spark.sparkContext().longAccumulator("mapped after filter");
+        Dataset<Person> pushedFiltered = df
+                .filter(Person.ageGreaterThan(20))
+                .map((MapFunction<Row, Person>) row -> {
+                    mappedAfterFilter.add(1);
+                    return mapper.call(row);
+                }, Encoders.bean(Person.class));
+        pushedFiltered.explain("formatted");
+        pushedFiltered.show();
+        System.out.printf("rows deserialized: %d%n", mappedAfterFilter.value());
+
+    }
+
+
+}
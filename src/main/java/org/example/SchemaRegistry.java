@@ -0,0 +1,134 @@
+package org.example;
+
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.types.DataType;
+import org.apache.spark.sql.types.StructType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Infers the schema of a local JSON file once and keeps it next to the data as
+ * {@code .<file>.schema}, so later reads skip Spark's inference pass.
+ * The stored schema is tied to the data's file set (path, size and mtime of every file) and is
+ * re-inferred when a file is added, removed or changed.
+ * The dot prefix keeps Spark from picking the file up when the data path is a directory.
+ */
+public class SchemaRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(SchemaRegistry.class);
+
+    private static final Map<Path, CachedSchema> cache = new ConcurrentHashMap<>();
+
+    private record CachedSchema(String fileSet, StructType schema) {
+    }
+
+    public static Dataset<Row> readJson(SparkSession spark, String path) {
+        return spark.read().schema(jsonSchema(spark, path)).json(path);
+    }
+
+    public static StructType jsonSchema(SparkSession spark, String path) {
+        Path dataPath = Paths.get(path).toAbsolutePath();
+        String fileSet = fileSetDigest(dataPath);
+
+        CachedSchema cached = cache.get(dataPath);
+        if (cached == null || !cached.fileSet().equals(fileSet)) {
+            cached = load(dataPath);
+        }
+        if (cached == null || !cached.fileSet().equals(fileSet)) {
+            cached = new CachedSchema(fileSet, spark.read().json(path).schema());
+            store(dataPath, cached);
+        }
+        cache.put(dataPath, cached);
+        return cached.schema();
+    }
+
+    public static void invalidate(String path) {
+        Path dataPath = Paths.get(path).toAbsolutePath();
+        cache.remove(dataPath);
+        try {
+            Files.deleteIfExists(schemaFile(dataPath));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static Path schemaFile(Path dataPath) {
+        return dataPath.resolveSibling("." + dataPath.getFileName() + ".schema");
+    }
+
+    // Path, size and mtime of each file, for a directory the non-hidden files Spark would read
+    private static String fileSetDigest(Path dataPath) {
+        try (Stream<Path> walk = Files.walk(dataPath)) {
+            List<Path> files = walk.filter(Files::isRegularFile)
+                    .filter(p -> p.equals(dataPath) || !FileRanges.isHiddenName(p.getFileName().toString()))
+                    .sorted()
+                    .toList();
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Path file : files) {
+                digest.update((file + "\t" + Files.size(file) + "\t" + Files.getLastModifiedTime(file).toMillis() + "\n")
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // File layout: first line is the file set digest, second line is StructType.json().
+    private static CachedSchema load(Path dataPath) {
+        Path file = schemaFile(dataPath);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            if (lines.size() < 2) {
+                return null;
+            }
+            return new CachedSchema(lines.get(0).trim(), (StructType) DataType.fromJson(lines.get(1)));
+        } catch (IOException | RuntimeException e) {
+            // A damaged schema file is treated like a missing one and gets rewritten
+            return null;
+        }
+    }
+
+    private static void store(Path dataPath, CachedSchema cached) {
+        Path file = schemaFile(dataPath);
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            Files.write(tmp, List.of(cached.fileSet(), cached.schema().json()), StandardCharsets.UTF_8);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            // Read-only data directories still get the in-memory cache
+            log.warn("Could not persist schema for {}", dataPath, e);
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package org.example;
+
+import com.github.luben.zstd.Zstd;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.spark.TaskContext;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.api.java.function.VoidFunction;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.catalyst.InternalRow;
+import org.apache.spark.sql.execution.vectorized.OnHeapColumnVector;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.StructType;
+import org.apache.spark.sql.vectorized.ColumnarBatch;
+import org.apache.spark.unsafe.Platform;
+import org.apache.spark.unsafe.types.UTF8String;
+import org.apache.spark.util.SerializableConfiguration;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Splittable compressed text, as an alternative to {@code compression=gzip} whose files can only be
+ * read by one task each. Lines are written in independent zstd frames of about {@code frameBytes}
+ * uncompressed, each ending on a line boundary, followed by a seek table in the zstd seekable format
+ * (a skippable frame listing compressed and decompressed frame sizes), so the files still decompress
+ * with plain {@code zstd -d}. {@link #read} reads the seek tables and hands each task a run of whole
+ * frames of up to {@code spark.sql.files.maxPartitionBytes}, so one large file is read in parallel.
+ * Hadoop's bzip2 codec ({@code compression=bzip2}) is splittable too, but far slower to write and read.
+ */
+public class SeekableZstdText {
+
+    public static final int DEFAULT_FRAME_BYTES = 4 * 1024 * 1024;
+    public static final int DEFAULT_LEVEL = 3;
+    public static final String EXTENSION = ".txt.zst";
+
+    private static final int SKIPPABLE_MAGIC = 0x184D2A5E;
+    private static final int SEEKABLE_MAGIC = 0x8F92EAB1;
+    private static final int FOOTER_BYTES = 9;
+    private static final int BATCH_SIZE = 4096;
+    private static final StructType SCHEMA = new StructType().add("value", DataTypes.StringType, false);
+
+    public record Range(String path, long offset, int[] compressedSizes, int[] decompressedSizes) implements Serializable {
+    }
+
+    public static void write(Dataset<Row> df, String path) throws IOException {
+        write(df, path, DEFAULT_FRAME_BYTES, DEFAULT_LEVEL);
+    }
+
+    // Writes the single string column of df, one line per row, replacing whatever is at path. The
+    // files go to a hidden staging directory next to path, which replaces path only once the job succeeded.
+    public static void write(Dataset<Row> df, String path, int frameBytes, int level) throws IOException {
+        if (df.schema().size() != 1 || !df.schema().fields()[0].dataType().equals(DataTypes.StringType)) {
+            throw new IllegalArgumentException("Text data source supports only a single string column, got " + df.schema().simpleString());
+        }
+        Configuration conf = df.sparkSession().sparkContext().hadoopConfiguration();
+        Path dir = new Path(path);
+        FileSystem fs = dir.getFileSystem(conf);
+        Path staging = new Path(dir.getParent(), "." + dir.getName() + "-staging-" + UUID.randomUUID());
+        fs.mkdirs(staging);
+        try {
+            df.queryExecution().toRdd().toJavaRDD()
+                    .foreachPartition(writePartition(staging.toString(), new SerializableConfiguration(conf), frameBytes, level));
+            fs.create(new Path(staging, "_SUCCESS"), true).close();
+            fs.delete(dir, true);
+            if (!fs.rename(staging, dir)) {
+                throw new IOException("Could not move " + staging + " to " + dir);
+            }
+        } finally {
+            fs.delete(staging, true);
+        }
+    }
+
+    // Static so the closure captures only the settings
+    private static VoidFunction<Iterator<InternalRow>> writePartition(String path, SerializableConfiguration conf,
+                                                                      int frameBytes, int level) {
+        return rows -> {
+            if (!rows.hasNext()) {
+                return;
+            }
+            TaskContext context = TaskContext.get();
+            Path dir = new Path(path);
+            FileSystem fs = dir.getFileSystem(conf.value());
+            Path tmp = new Path(dir, String.format("_tmp-%05d-%d", context.partitionId(), context.taskAttemptId()));
+            Path target = new Path(dir, String.format("part-%05d%s", context.partitionId(), EXTENSION));
+
+            List<int[]> frames = new ArrayList<>();
+            byte[] block = new byte[frameBytes + 1024];
+            byte[] compressed = new byte[(int) Zstd.compressBound(block.length)];
+            int size = 0;
+            try (FSDataOutputStream out = fs.create(tmp, true)) {
+                while (rows.hasNext()) {
+                    InternalRow row = rows.next();
+                    UTF8String line = row.isNullAt(0) ? UTF8String.EMPTY_UTF8 : row.getUTF8String(0);
+                    int n = line.numBytes();
+                    if (size + n + 1 > block.length) {
+                        // Only a single line longer than a frame gets here with size == 0
+                        if (size > 0) {
+                            frames.add(writeFrame(out, block, size, compressed, level));
+                            size = 0;
+                        }
+                        if (n + 1 > block.length) {
+                            block = new byte[n + 1];
+                            compressed = new byte[(int) Zstd.compressBound(block.length)];
+                        }
+                    }
+                    Platform.copyMemory(line.getBaseObject(), line.getBaseOffset(), block, Platform.BYTE_ARRAY_OFFSET + size, n);
+                    size += n;
+                    block[size++] = '\n';
+                    if (size >= frameBytes) {
+                        frames.add(writeFrame(out, block, size, compressed, level));
+                        size = 0;
+                    }
+                }
+                if (size > 0) {
+                    frames.add(writeFrame(out, block, size, compressed, level));
+                }
+                writeSeekTable(out, frames);
+            }
+            fs.delete(target, false);
+            if (!fs.rename(tmp, target)) {
+                throw new IOException("Could not move " + tmp + " to " + target);
+            }
+        };
+    }
+
+    private static int[] writeFrame(FSDataOutputStream out, byte[] block, int size, byte[] compressed, int level) throws IOException {
+        long written = Zstd.compressByteArray(compressed, 0, compressed.length, block, 0, size, level);
+        if (Zstd.isError(written)) {
+            throw new IOException("zstd compression failed: " + Zstd.getErrorName(written));
+        }
+        out.write(compressed, 0, (int) written);
+        return new int[]{(int) written, size};
+    }
+
+    // Skippable frame: magic, frame size, then per frame (compressed, decompressed) sizes, then the
+    // footer: frame count, descriptor (no checksums), seekable magic; all little endian
+    private static void writeSeekTable(FSDataOutputStream out, List<int[]> frames) throws IOException {
+        int tableBytes = frames.size() * 8 + FOOTER_BYTES;
+        ByteBuffer buffer = ByteBuffer.allocate(8 + tableBytes).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(SKIPPABLE_MAGIC).putInt(tableBytes);
+        for (int[] frame : frames) {
+            buffer.putInt(frame[0]).putInt(frame[1]);
+        }
+        buffer.putInt(frames.size()).put((byte) 0).putInt(SEEKABLE_MAGIC);
+        out.write(buffer.array());
+    }
+
+    public static Dataset<Row> read(SparkSession spark, String path) throws IOException {
+        return read(spark, path, spark.sessionState().conf().filesMaxPartitionBytes());
+    }
+
+    public static Dataset<Row> read(SparkSession spark, String path, long maxSplitBytes) throws IOException {
+        Configuration conf = spark.sparkContext().hadoopConfiguration();
+        List<Range> ranges = plan(conf, path, maxSplitBytes);
+        SerializableConfiguration taskConf = new SerializableConfiguration(conf);
+        JavaRDD<InternalRow> rows = JavaSparkContext.fromSparkContext(spark.sparkContext())
+                .parallelize(ranges, Math.max(1, ranges.size()))
+                .mapPartitions(it -> it.hasNext()
+                        ? new LineIterator(taskConf.value(), it.next())
+                        : Collections.<InternalRow>emptyIterator());
+        return ColumnarRows.toDataFrame(spark, rows.rdd(), SCHEMA);
+    }
+
+    static List<Range> plan(Configuration conf, String path, long maxSplitBytes) throws IOException {
+        Path root = new Path(path);
+        FileSystem fs = root.getFileSystem(conf);
+        List<LocatedFileStatus> files = new ArrayList<>();
+        RemoteIterator<LocatedFileStatus> it = fs.listFiles(root, true);
+        while (it.hasNext()) {
+            LocatedFileStatus status = it.next();
+            if (status.getPath().getName().endsWith(EXTENSION) && !FileRanges.isHidden(root, status.getPath())) {
+                files.add(status);
+            }
+        }
+        files.sort((a, b) -> a.getPath().compareTo(b.getPath()));
+
+        List<Range> ranges = new ArrayList<>();
+        for (LocatedFileStatus file : files) {
+            int[][] table = readSeekTable(fs, file);
+            int[] compressed = table[0];
+            int[] decompressed = table[1];
+            long offset = 0;
+            int first = 0;
+            long rangeBytes = 0;
+            for (int i = 0; i < compressed.length; i++) {
+                if (i > first && rangeBytes + compressed[i] > maxSplitBytes) {
+                    ranges.add(range(file, offset, compressed, decompressed, first, i));
+                    offset += rangeBytes;
+                    first = i;
+                    rangeBytes = 0;
+                }
+                rangeBytes += compressed[i];
+            }
+            if (first < compressed.length) {
+                ranges.add(range(file, offset, compressed, decompressed, first, compressed.length));
+            }
+        }
+        return ranges;
+    }
+
+    private static Range range(LocatedFileStatus file, long offset, int[] compressed, int[] decompressed, int from, int to) {
+        return new Range(file.getPath().toString(), offset,
+                Arrays.copyOfRange(compressed, from, to), Arrays.copyOfRange(decompressed, from, to));
+    }
+
+    // Returns {compressed sizes, decompressed sizes}
+    private static int[][] readSeekTable(FileSystem fs, LocatedFileStatus file) throws IOException {
+        try (FSDataInputStream in = fs.open(file.getPath())) {
+            byte[] footer = new byte[FOOTER_BYTES];
+            in.readFully(file.getLen() - FOOTER_BYTES, footer);
+            ByteBuffer buffer = ByteBuffer.wrap(footer).order(ByteOrder.LITTLE_ENDIAN);
+            int count = buffer.getInt();
+            boolean checksums = (buffer.get() & 0x80) != 0;
+            if (buffer.getInt() != SEEKABLE_MAGIC) {
+                throw new IOException("No zstd seek table in " + file.getPath());
+            }
+            int entryBytes = checksums ? 12 : 8;
+            byte[] entries = new byte[count * entryBytes];
+            in.readFully(file.getLen() - FOOTER_BYTES - entries.length, entries);
+            buffer = ByteBuffer.wrap(entries).order(ByteOrder.LITTLE_ENDIAN);
+            int[][] table = new int[2][count];
+            for (int i = 0; i < count; i++) {
+                table[0][i] = buffer.getInt();
+                table[1][i] = buffer.getInt();
+                if (checksums) {
+                    buffer.getInt();
+                }
+            }
+            return table;
+        }
+    }
+
+    private static class LineIterator extends ColumnarRows.BatchIterator {
+        private final FSDataInputStream in;
+        private final Range range;
+        private final OnHeapColumnVector values = new OnHeapColumnVector(BATCH_SIZE, DataTypes.StringType);
+        private final ColumnarBatch batch = new ColumnarBatch(new OnHeapColumnVector[]{values});
+        private byte[] compressed = new byte[0];
+        private byte[] frame = new byte[0];
+        private int frameIndex;
+        private int frameSize;
+        private int position;
+
+        LineIterator(Configuration conf, Range range) throws IOException {
+            Path path = new Path(range.path());
+            this.in = path.getFileSystem(conf).open(path);
+            this.in.seek(range.offset());
+            this.range = range;
+        }
+
+        @Override
+        protected Iterator<InternalRow> nextBatch() throws IOException {
+            values.reset();
+            int numRows = 0;
+            while (numRows < BATCH_SIZE) {
+                if (position == frameSize && !nextFrame()) {
+                    break;
+                }
+                int end = position;
+                while (end < frameSize && frame[end] != '\n') {
+                    end++;
+                }
+                values.putByteArray(numRows++, frame, position, end - position);
+                position = Math.min(frameSize, end + 1);
+            }
+            if (numRows == 0) {
+                return null;
+            }
+            batch.setNumRows(numRows);
+            return batch.rowIterator();
+        }
+
+        @Override
+        protected void close() throws IOException {
+            batch.close();
+            // Null when opening the file failed
+            if (in != null) {
+                in.close();
+            }
+        }
+
+        private boolean nextFrame() throws IOException {
+            if (frameIndex == range.compressedSizes().length) {
+                return false;
+            }
+            int compressedSize = range.compressedSizes()[frameIndex];
+            int decompressedSize = range.decompressedSizes()[frameIndex];
+            frameIndex++;
+            if (compressed.length < compressedSize) {
+                compressed = new byte[compressedSize];
+            }
+            if (frame.length < decompressedSize) {
+                frame = new byte[decompressedSize];
+            }
+            in.readFully(compressed, 0, compressedSize);
+            long n = Zstd.decompressByteArray(frame, 0, decompressedSize, compressed, 0, compressedSize);
+            if (Zstd.isError(n)) {
+                throw new IOException("zstd decompression failed in " + range.path() + ": " + Zstd.getErrorName(n));
+            }
+            frameSize = (int) n;
+            position = 0;
+            return true;
+        }
+    }
+}
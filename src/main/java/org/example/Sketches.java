@@ -0,0 +1,57 @@
+package org.example;
+
+import org.apache.spark.sql.Encoders;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.api.java.UDF2;
+import org.apache.spark.sql.functions;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.util.sketch.CountMinSketch;
+
+/**
+ * Registers the sketch aggregators as SQL functions:
+ * <pre>
+ * hll_distinct(string_col)                     approximate distinct count
+ * hll_distinct_long(long_col)                  approximate distinct count
+ * tdigest(numeric_col)                         t-digest as binary
+ * tdigest_quantile(tdigest(col), 0.99)         quantile from a digest
+ * count_min(string_col)                        Count-Min sketch as binary
+ * count_min_estimate(count_min(col), 'item')   estimated frequency of an item
+ * </pre>
+ */
+public class Sketches {
+
+    public static void register(SparkSession spark) {
+        spark.udf().register("hll_distinct", functions.udaf(new HyperLogLogAggregator.OfString(), Encoders.STRING()));
+        spark.udf().register("hll_distinct_long", functions.udaf(new HyperLogLogAggregator.OfLong(), Encoders.LONG()));
+        spark.udf().register("tdigest", functions.udaf(new TDigestAggregator(), Encoders.DOUBLE()));
+        spark.udf().register("count_min", functions.udaf(new CountMinAggregator(), Encoders.STRING()));
+
+        // Java UDFs get no implicit casts: a literal like 0.99 arrives as a BigDecimal, a column as a Double
+        spark.udf().register("tdigest_quantile",
+                (UDF2<byte[], Number, Double>) (digest, q) -> digest == null || q == null
+                        ? null
+                        : TDigest.fromBytes(digest).quantile(q.doubleValue()),
+                DataTypes.DoubleType);
+        spark.udf().register("count_min_estimate",
+                (UDF2<byte[], String, Long>) (sketch, item) -> sketch == null ? null : CountMinSketch.readFrom(sketch).estimateCount(item),
+                DataTypes.LongType);
+    }
+
+    public static void main(String[] args) {
+        SparkSession spark = SparkSession.builder()
+                .appName("Sketches")
+                .master("local[*]")
+                .getOrCreate();
+        register(spark);
+
+        spark.range(10_000_000)
+                .selectExpr("id % 1000000 AS user_id", "cast(id % 100 AS STRING) AS page", "rand() * 1000 AS latency_ms")
+                .createOrReplaceTempView("requests");
+
+        spark.sql("SELECT hll_distinct_long(user_id) AS users, count(DISTINCT user_id) AS exact_users FROM requests").show();
+        spark.sql("SELECT tdigest_quantile(tdigest(latency_ms), 0.99) AS p99, percentile(latency_ms, 0.99) AS exact_p99 FROM requests").show();
+        spark.sql("SELECT count_min_estimate(count_min(page), '7') AS page_7_hits FROM requests").show();
+
+        spark.stop();
+    }
+}
@@ -0,0 +1,52 @@
+package org.example;
+
+import org.apache.spark.sql.Encoder;
+import org.apache.spark.sql.Encoders;
+import org.apache.spark.sql.expressions.Aggregator;
+import scala.Tuple2;
+
+/**
+ * Average-style aggregator whose buffer is a flat struct of two non-null longs (sum, count),
+ * encoded as a tuple of primitive Scala longs, the encoder Spark derives for a {@code (Long, Long)}
+ * Dataset, instead of the bean encoder {@code MyAverage} uses. The tuple encoder serializes the buffer
+ * with two field reads and deserializes it with one constructor call, with no bean instantiation,
+ * setter calls or null checks. Subclasses only say how to read a primitive long from the input,
+ * e.g. {@code employee.getSalary()}.
+ */
+public abstract class SumCountAggregator<IN> extends Aggregator<IN, Tuple2<Long, Long>, Double> {
+
+    protected abstract long value(IN input);
+
+    @Override
+    public Tuple2<Long, Long> zero() {
+        return new Tuple2<>(0L, 0L);
+    }
+
+    @Override
+    public Tuple2<Long, Long> reduce(Tuple2<Long, Long> buffer, IN input) {
+        return new Tuple2<>(buffer._1() + value(input), buffer._2() + 1);
+    }
+
+    @Override
+    public Tuple2<Long, Long> merge(Tuple2<Long, Long> b1, Tuple2<Long, Long> b2) {
+        return new Tuple2<>(b1._1() + b2._1(), b1._2() + b2._2());
+    }
+
+    @Override
+    public Double finish(Tuple2<Long, Long> reduction) {
+        return ((double) reduction._1()) / reduction._2();
+    }
+
+    // scalaLong() is typed Encoder<Object> in Java; its values are boxed java.lang.Long like Tuple2's
+    // fields, but unlike Encoders.LONG() its column is non-nullable
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Encoder<Tuple2<Long, Long>> bufferEncoder() {
+        return (Encoder) Encoders.tuple(Encoders.scalaLong(), Encoders.scalaLong());
+    }
+
+    @Override
+    public Encoder<Double> outputEncoder() {
+        return Encoders.DOUBLE();
+    }
+}
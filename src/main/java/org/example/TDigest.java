@@ -0,0 +1,287 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Merging t-digest for streaming quantiles. Incoming points are buffered and periodically merged into
+ * centroids that each span at most one unit of the scale function
+ * {@code k(q) = compression / (2 * pi) * asin(2q - 1)}, so the tails keep small centroids while the
+ * middle is summarised. About {@code compression} centroids are kept, at most.
+ * Digests merge by re-compressing their centroids, which is what makes them usable as an aggregation buffer.
+ */
+public class TDigest implements Serializable {
+
+    public static final double DEFAULT_COMPRESSION = 100;
+
+    private final double compression;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private double totalWeight;
+
+    // Merged centroids, sorted by mean
+    private transient double[] means;
+    private transient double[] weights;
+    private transient int centroids;
+
+    // Points (or other digests' centroids) not merged yet
+    private transient double[] bufferMeans;
+    private transient double[] bufferWeights;
+    private transient int buffered;
+
+    // Scratch space for compress, reused between calls
+    private transient double[] mergedMeans;
+    private transient double[] mergedWeights;
+
+    public TDigest() {
+        this(DEFAULT_COMPRESSION);
+    }
+
+    public TDigest(double compression) {
+        this.compression = compression;
+        allocate(0);
+    }
+
+    private void allocate(int centroidCapacity) {
+        int capacity = Math.max(centroidCapacity, (int) Math.ceil(compression * 2) + 10);
+        means = new double[capacity];
+        weights = new double[capacity];
+        int bufferSize = (int) (5 * compression);
+        bufferMeans = new double[bufferSize];
+        bufferWeights = new double[bufferSize];
+    }
+
+    public void add(double value) {
+        add(value, 1);
+    }
+
+    public void add(double value, double weight) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        if (buffered == bufferMeans.length) {
+            compress();
+        }
+        bufferMeans[buffered] = value;
+        bufferWeights[buffered] = weight;
+        buffered++;
+        totalWeight += weight;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    public TDigest merge(TDigest other) {
+        other.compress();
+        for (int i = 0; i < other.centroids; i++) {
+            add(other.means[i], other.weights[i]);
+        }
+        // The centroids only bound the other digest's extremes from the inside
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        return this;
+    }
+
+    public double size() {
+        return totalWeight;
+    }
+
+    public int centroidCount() {
+        compress();
+        return centroids;
+    }
+
+    public void compress() {
+        if (buffered == 0) {
+            return;
+        }
+        sort(bufferMeans, bufferWeights, 0, buffered);
+        int n = centroids + buffered;
+        if (mergedMeans == null || mergedMeans.length < n) {
+            mergedMeans = new double[n];
+            mergedWeights = new double[n];
+        }
+        // Both runs are sorted, so one merge pass puts them in order
+        int c = 0;
+        int b = 0;
+        for (int k = 0; k < n; k++) {
+            if (b == buffered || (c < centroids && means[c] <= bufferMeans[b])) {
+                mergedMeans[k] = means[c];
+                mergedWeights[k] = weights[c++];
+            } else {
+                mergedMeans[k] = bufferMeans[b];
+                mergedWeights[k] = bufferWeights[b++];
+            }
+        }
+        buffered = 0;
+
+        if (means.length < n) {
+            // Never more centroids than inputs; grows only for tiny compressions or huge merges
+            means = Arrays.copyOf(means, n);
+            weights = Arrays.copyOf(weights, n);
+        }
+        centroids = 0;
+        double soFar = 0;
+        double limit = weightLimit(soFar);
+        double currentMean = mergedMeans[0];
+        double currentWeight = mergedWeights[0];
+        for (int k = 1; k < n; k++) {
+            double proposed = currentWeight + mergedWeights[k];
+            if (proposed <= limit) {
+                currentMean += (mergedMeans[k] - currentMean) * mergedWeights[k] / proposed;
+                currentWeight = proposed;
+            } else {
+                means[centroids] = currentMean;
+                weights[centroids] = currentWeight;
+                centroids++;
+                soFar += currentWeight;
+                limit = weightLimit(soFar);
+                currentMean = mergedMeans[k];
+                currentWeight = mergedWeights[k];
+            }
+        }
+        means[centroids] = currentMean;
+        weights[centroids] = currentWeight;
+        centroids++;
+    }
+
+    // Largest weight of a centroid starting at cumulative weight soFar: one unit of the k1 scale function
+    private double weightLimit(double soFar) {
+        double normalizer = compression / (2 * Math.PI);
+        double qLeft = soFar / totalWeight;
+        double kRight = normalizer * Math.asin(2 * qLeft - 1) + 1;
+        double qRight = kRight >= compression / 4 ? 1 : (Math.sin(kRight / normalizer) + 1) / 2;
+        return (qRight - qLeft) * totalWeight;
+    }
+
+    // Sorts keys[from, to) and moves values along with them
+    private static void sort(double[] keys, double[] values, int from, int to) {
+        while (to - from > 16) {
+            int mid = (from + to) >>> 1;
+            double pivot = median(keys[from], keys[mid], keys[to - 1]);
+            int i = from;
+            int j = to - 1;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+                while (keys[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(keys, values, i++, j--);
+                }
+            }
+            // Recurse into the smaller half so the stack stays logarithmic
+            if (j - from < to - i) {
+                sort(keys, values, from, j + 1);
+                from = i;
+            } else {
+                sort(keys, values, i, to);
+                to = j + 1;
+            }
+        }
+        for (int i = from + 1; i < to; i++) {
+            for (int j = i; j > from && keys[j - 1] > keys[j]; j--) {
+                swap(keys, values, j - 1, j);
+            }
+        }
+    }
+
+    private static double median(double a, double b, double c) {
+        return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+    }
+
+    private static void swap(double[] keys, double[] values, int i, int j) {
+        double key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        double value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+
+    // Interpolates between centroid centres; the outermost halves interpolate towards min and max
+    public double quantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("Quantile must be in [0, 1]: " + q);
+        }
+        compress();
+        if (centroids == 0) {
+            return Double.NaN;
+        }
+        if (centroids == 1) {
+            return means[0];
+        }
+        double index = q * totalWeight;
+        if (index < weights[0] / 2) {
+            return min + (means[0] - min) * index / (weights[0] / 2);
+        }
+        double cumulative = 0;
+        for (int i = 0; i < centroids - 1; i++) {
+            double left = cumulative + weights[i] / 2;
+            double right = cumulative + weights[i] + weights[i + 1] / 2;
+            if (index <= right) {
+                return means[i] + (means[i + 1] - means[i]) * (index - left) / (right - left);
+            }
+            cumulative += weights[i];
+        }
+        double last = weights[centroids - 1] / 2;
+        double fromLast = index - (totalWeight - last);
+        return means[centroids - 1] + (max - means[centroids - 1]) * Math.min(1, fromLast / last);
+    }
+
+    // Layout: compression, min, max, count, then count (mean, weight) pairs
+    public byte[] toBytes() {
+        compress();
+        ByteBuffer buffer = ByteBuffer.allocate(8 * 3 + 4 + centroids * 16);
+        buffer.putDouble(compression).putDouble(min).putDouble(max).putInt(centroids);
+        for (int i = 0; i < centroids; i++) {
+            buffer.putDouble(means[i]).putDouble(weights[i]);
+        }
+        return buffer.array();
+    }
+
+    public static TDigest fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        TDigest digest = new TDigest(buffer.getDouble());
+        digest.min = buffer.getDouble();
+        digest.max = buffer.getDouble();
+        int count = buffer.getInt();
+        if (digest.means.length < count) {
+            digest.allocate(count);
+        }
+        for (int i = 0; i < count; i++) {
+            digest.means[i] = buffer.getDouble();
+            digest.weights[i] = buffer.getDouble();
+            digest.totalWeight += digest.weights[i];
+        }
+        digest.centroids = count;
+        return digest;
+    }
+
+    // Java serialization writes only the merged centroids, not the (mostly empty) arrays
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        compress();
+        out.defaultWriteObject();
+        out.writeInt(centroids);
+        for (int i = 0; i < centroids; i++) {
+            out.writeDouble(means[i]);
+            out.writeDouble(weights[i]);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int count = in.readInt();
+        allocate(count);
+        for (int i = 0; i < count; i++) {
+            means[i] = in.readDouble();
+            weights[i] = in.readDouble();
+        }
+        centroids = count;
+    }
+}
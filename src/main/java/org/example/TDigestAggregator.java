@@ -0,0 +1,56 @@
+package org.example;
+
+import org.apache.spark.sql.Encoder;
+import org.apache.spark.sql.Encoders;
+import org.apache.spark.sql.expressions.Aggregator;
+
+/**
+ * Builds a {@link TDigest} over a numeric column and returns it as bytes ({@link TDigest#toBytes()}),
+ * so one digest can answer any number of quantiles and can be merged again later.
+ * The buffer is serialized with Java serialization, which writes only the merged centroids.
+ */
+public class TDigestAggregator extends Aggregator<Double, TDigest, byte[]> {
+
+    private final double compression;
+
+    public TDigestAggregator() {
+        this(TDigest.DEFAULT_COMPRESSION);
+    }
+
+    public TDigestAggregator(double compression) {
+        this.compression = compression;
+    }
+
+    @Override
+    public TDigest zero() {
+        return new TDigest(compression);
+    }
+
+    @Override
+    public TDigest reduce(TDigest digest, Double value) {
+        if (value != null) {
+            digest.add(value);
+        }
+        return digest;
+    }
+
+    @Override
+    public TDigest merge(TDigest d1, TDigest d2) {
+        return d1.merge(d2);
+    }
+
+    @Override
+    public byte[] finish(TDigest digest) {
+        return digest.toBytes();
+    }
+
+    @Override
+    public Encoder<TDigest> bufferEncoder() {
+        return Encoders.javaSerialization(TDigest.class);
+    }
+
+    @Override
+    public Encoder<byte[]> outputEncoder() {
+        return Encoders.BINARY();
+    }
+}
@@ -0,0 +1,67 @@
+package org.example;
+
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.Path;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SaveMode;
+import org.apache.spark.sql.SparkSession;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Writes the same generated text as one file uncompressed, gzip, bzip2 and {@link SeekableZstdText},
+ * then reads each back and counts the lines. Reports write time, size relative to the uncompressed
+ * file and read time with the number of read tasks, which is 1 for gzip however large the file is.
+ * Usage: TextCompressionBenchmark [lines] (defaults to 30M, about 2 GB uncompressed)
+ */
+public class TextCompressionBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        long lines = args.length > 0 ? Long.parseLong(args[0]) : 30_000_000L;
+        String base = Files.createTempDirectory("text-compression-benchmark").toString();
+
+        SparkSession spark = SparkSession.builder()
+                .appName("TextCompressionBenchmark")
+                .master("local[*]")
+                .getOrCreate();
+
+        // One file per format, the case where gzip cannot be read in parallel
+        Dataset<Row> text = spark.range(lines)
+                .selectExpr("concat_ws(', ', concat('person-', id), cast(id % 80 AS STRING), "
+                        + "concat('job-', id % 1000), cast(rand(1) AS STRING)) AS value")
+                .coalesce(1);
+
+        long plainBytes = 0;
+        for (String codec : new String[]{"none", "gzip", "bzip2", "zstd-seekable"}) {
+            String path = base + "/" + codec;
+            long start = System.nanoTime();
+            if (codec.equals("zstd-seekable")) {
+                SeekableZstdText.write(text, path);
+            } else {
+                text.write().mode(SaveMode.Overwrite).option("compression", codec).text(path);
+            }
+            long writeMs = (System.nanoTime() - start) / 1_000_000;
+            long bytes = size(spark, path);
+            if (codec.equals("none")) {
+                plainBytes = bytes;
+            }
+
+            start = System.nanoTime();
+            Dataset<Row> read = codec.equals("zstd-seekable") ? SeekableZstdText.read(spark, path) : spark.read().text(path);
+            long count = read.count();
+            long readMs = (System.nanoTime() - start) / 1_000_000;
+
+            System.out.printf("%-14s write %6d ms | %,14d bytes, ratio %5.2f | read %,d lines in %6d ms with %d tasks%n",
+                    codec, writeMs, bytes, (double) plainBytes / bytes, count, readMs, read.rdd().getNumPartitions());
+        }
+        spark.stop();
+    }
+
+    private static long size(SparkSession spark, String path) throws IOException {
+        Path p = new Path(path);
+        ContentSummary summary = p.getFileSystem(spark.sparkContext().hadoopConfiguration()).getContentSummary(p);
+        return summary.getLength();
+    }
+}
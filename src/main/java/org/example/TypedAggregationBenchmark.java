@@ -0,0 +1,59 @@
+package org.example;
+
+import org.apache.spark.examples.sql.JavaUserDefinedTypedAggregation.Employee;
+import org.apache.spark.examples.sql.JavaUserDefinedTypedAggregation.MyAverage;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Encoders;
+import org.apache.spark.sql.SparkSession;
+
+import java.util.function.Supplier;
+
+import static org.apache.spark.sql.functions.avg;
+import static org.apache.spark.sql.functions.col;
+import static org.apache.spark.sql.functions.concat;
+import static org.apache.spark.sql.functions.lit;
+
+/**
+ * Times {@code ds.select(myAverage)} with the bean-buffer MyAverage from JavaUserDefinedTypedAggregation
+ * against the tuple-buffer {@link SumCountAggregator}, with the built-in avg as a baseline, and prints
+ * each aggregator's buffer schema.
+ * Usage: TypedAggregationBenchmark [employees] (defaults to 50M)
+ */
+public class TypedAggregationBenchmark {
+
+    public static class SalaryAverage extends SumCountAggregator<Employee> {
+        @Override
+        protected long value(Employee employee) {
+            return employee.getSalary();
+        }
+    }
+
+    public static void main(String[] args) {
+        long rows = args.length > 0 ? Long.parseLong(args[0]) : 50_000_000L;
+
+        SparkSession spark = SparkSession.builder()
+                .appName("TypedAggregationBenchmark")
+                .master("local[*]")
+                .getOrCreate();
+
+        Dataset<Employee> ds = spark.range(rows)
+                .select(concat(lit("employee_"), col("id")).as("name"), col("id").mod(10_000).as("salary"))
+                .as(Encoders.bean(Employee.class));
+
+        System.out.println("MyAverage buffer:     " + new MyAverage().bufferEncoder().schema().simpleString());
+        System.out.println("SalaryAverage buffer: " + new SalaryAverage().bufferEncoder().schema().simpleString());
+        time("MyAverage (bean buffer)", () -> ds.select(new MyAverage().toColumn()).first());
+        time("SalaryAverage (tuple buffer)", () -> ds.select(new SalaryAverage().toColumn()).first());
+        time("built-in avg", () -> ds.select(avg("salary")).first().get(0));
+
+        spark.stop();
+    }
+
+    private static void time(String label, Supplier<Object> action) {
+        // First run warms up codegen and the JIT
+        action.get();
+        long start = System.nanoTime();
+        Object result = action.get();
+        System.out.printf("%-30s %8d ms  (result %s)%n", label, (System.nanoTime() - start) / 1_000_000, result);
+    }
+}
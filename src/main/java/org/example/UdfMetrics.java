@@ -0,0 +1,373 @@
+package org.example;
+
+import org.apache.spark.sql.Encoder;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.api.java.UDF0;
+import org.apache.spark.sql.api.java.UDF1;
+import org.apache.spark.sql.api.java.UDF2;
+import org.apache.spark.sql.execution.QueryExecution;
+import org.apache.spark.sql.expressions.Aggregator;
+import org.apache.spark.sql.functions;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.DataType;
+import org.apache.spark.sql.util.QueryExecutionListener;
+import org.apache.spark.util.AccumulatorV2;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Drop-in replacement for {@code spark.udf().register(...)} that times every call.
+ * Each UDF gets a named accumulator ("udf.&lt;name&gt;") with call count, null results, failures,
+ * total nanos and a power-of-two latency histogram; the accumulators show up on the stage pages
+ * of the UI and are merged on the driver like any other accumulator.
+ * {@link #report()} prints the totals, and {@link #reportAfterEachQuery()} prints what each
+ * query added.
+ */
+public class UdfMetrics {
+
+    private final SparkSession spark;
+    private final Map<String, StatsAccumulator> accumulators = new LinkedHashMap<>();
+
+    public UdfMetrics(SparkSession spark) {
+        this.spark = spark;
+    }
+
+    public <R> void register(String name, UDF0<R> f, DataType returnType) {
+        spark.udf().register(name, timed(f, accumulator(name)), returnType);
+    }
+
+    public <T1, R> void register(String name, UDF1<T1, R> f, DataType returnType) {
+        spark.udf().register(name, timed(f, accumulator(name)), returnType);
+    }
+
+    public <T1, T2, R> void register(String name, UDF2<T1, T2, R> f, DataType returnType) {
+        spark.udf().register(name, timed(f, accumulator(name)), returnType);
+    }
+
+    // Keep non-determinism, as asNondeterministic() does, for UDFs such as random() that the
+    // optimizer must not fold, reorder or evaluate a different number of times
+    public <R> void registerNondeterministic(String name, UDF0<R> f, DataType returnType) {
+        spark.udf().register(name, functions.udf(timed(f, accumulator(name)), returnType).asNondeterministic());
+    }
+
+    public <T1, R> void registerNondeterministic(String name, UDF1<T1, R> f, DataType returnType) {
+        spark.udf().register(name, functions.udf(timed(f, accumulator(name)), returnType).asNondeterministic());
+    }
+
+    public <T1, T2, R> void registerNondeterministic(String name, UDF2<T1, T2, R> f, DataType returnType) {
+        spark.udf().register(name, functions.udf(timed(f, accumulator(name)), returnType).asNondeterministic());
+    }
+
+    // For Aggregator based UDAFs the timed call is reduce(), which runs once per input row
+    public <IN, BUF, OUT> void registerUdaf(String name, Aggregator<IN, BUF, OUT> aggregator, Encoder<IN> inputEncoder) {
+        spark.udf().register(name, functions.udaf(new TimedAggregator<>(aggregator, accumulator(name)), inputEncoder));
+    }
+
+    public Map<String, Stats> snapshot() {
+        Map<String, Stats> snapshot = new LinkedHashMap<>();
+        accumulators.forEach((name, acc) -> snapshot.put(name, acc.value().copy()));
+        return snapshot;
+    }
+
+    public String report() {
+        return format(snapshot());
+    }
+
+    // Prints the per-UDF delta of every successful query, keyed by the query's action name
+    public void reportAfterEachQuery() {
+        spark.listenerManager().register(new QueryExecutionListener() {
+            private Map<String, Stats> previous = snapshot();
+
+            @Override
+            public synchronized void onSuccess(String funcName, QueryExecution qe, long durationNs) {
+                Map<String, Stats> current = snapshot();
+                Map<String, Stats> delta = new LinkedHashMap<>();
+                current.forEach((name, stats) -> {
+                    Stats before = previous.getOrDefault(name, new Stats());
+                    Stats diff = stats.minus(before);
+                    if (diff.calls > 0 || diff.failures > 0) {
+                        delta.put(name, diff);
+                    }
+                });
+                previous = current;
+                if (!delta.isEmpty()) {
+                    System.out.printf("UDF metrics for %s (%d ms):%n%s",
+                            funcName, durationNs / 1_000_000, format(delta));
+                }
+            }
+
+            @Override
+            public void onFailure(String funcName, QueryExecution qe, Exception exception) {
+            }
+        });
+    }
+
+    private static String format(Map<String, Stats> stats) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-16s %12s %10s %10s %12s %10s %10s %10s%n",
+                "udf", "calls", "null%", "failures", "total ms", "p50 ns", "p99 ns", "max ns"));
+        stats.forEach((name, s) -> sb.append(String.format("%-16s %12d %10.2f %10d %12.1f %10d %10d %10d%n",
+                name, s.calls, s.calls == 0 ? 0.0 : 100.0 * s.nullResults / s.calls, s.failures,
+                s.totalNanos / 1e6, s.percentile(0.5), s.percentile(0.99), s.percentile(1.0))));
+        return sb.toString();
+    }
+
+    private StatsAccumulator accumulator(String name) {
+        return accumulators.computeIfAbsent(name, n -> {
+            StatsAccumulator acc = new StatsAccumulator();
+            spark.sparkContext().register(acc, "udf." + n);
+            return acc;
+        });
+    }
+
+    // The wrappers are static so the lambdas capture only the function and its accumulator
+
+    private static <R> UDF0<R> timed(UDF0<R> f, StatsAccumulator acc) {
+        return () -> {
+            long start = System.nanoTime();
+            try {
+                R result = f.call();
+                acc.record(System.nanoTime() - start, result == null);
+                return result;
+            } catch (Exception e) {
+                acc.failure(System.nanoTime() - start);
+                throw e;
+            }
+        };
+    }
+
+    private static <T1, R> UDF1<T1, R> timed(UDF1<T1, R> f, StatsAccumulator acc) {
+        return t1 -> {
+            long start = System.nanoTime();
+            try {
+                R result = f.call(t1);
+                acc.record(System.nanoTime() - start, result == null);
+                return result;
+            } catch (Exception e) {
+                acc.failure(System.nanoTime() - start);
+                throw e;
+            }
+        };
+    }
+
+    private static <T1, T2, R> UDF2<T1, T2, R> timed(UDF2<T1, T2, R> f, StatsAccumulator acc) {
+        return (t1, t2) -> {
+            long start = System.nanoTime();
+            try {
+                R result = f.call(t1, t2);
+                acc.record(System.nanoTime() - start, result == null);
+                return result;
+            } catch (Exception e) {
+                acc.failure(System.nanoTime() - start);
+                throw e;
+            }
+        };
+    }
+
+    private static class TimedAggregator<IN, BUF, OUT> extends Aggregator<IN, BUF, OUT> {
+        private final Aggregator<IN, BUF, OUT> delegate;
+        private final StatsAccumulator acc;
+
+        TimedAggregator(Aggregator<IN, BUF, OUT> delegate, StatsAccumulator acc) {
+            this.delegate = delegate;
+            this.acc = acc;
+        }
+
+        @Override
+        public BUF zero() {
+            return delegate.zero();
+        }
+
+        @Override
+        public BUF reduce(BUF buffer, IN input) {
+            long start = System.nanoTime();
+            try {
+                BUF result = delegate.reduce(buffer, input);
+                acc.record(System.nanoTime() - start, false);
+                return result;
+            } catch (RuntimeException e) {
+                acc.failure(System.nanoTime() - start);
+                throw e;
+            }
+        }
+
+        @Override
+        public BUF merge(BUF b1, BUF b2) {
+            return delegate.merge(b1, b2);
+        }
+
+        @Override
+        public OUT finish(BUF reduction) {
+            return delegate.finish(reduction);
+        }
+
+        @Override
+        public Encoder<BUF> bufferEncoder() {
+            return delegate.bufferEncoder();
+        }
+
+        @Override
+        public Encoder<OUT> outputEncoder() {
+            return delegate.outputEncoder();
+        }
+    }
+
+    public static class Stats implements Serializable {
+        // Bucket b counts calls that took [2^b, 2^(b+1)) nanos
+        private final long[] histogram = new long[64];
+        long calls;
+        long nullResults;
+        long failures;
+        long totalNanos;
+
+        void record(long nanos, boolean nullResult) {
+            calls++;
+            if (nullResult) {
+                nullResults++;
+            }
+            totalNanos += nanos;
+            histogram[63 - Long.numberOfLeadingZeros(Math.max(nanos, 1))]++;
+        }
+
+        void failure(long nanos) {
+            failures++;
+            totalNanos += nanos;
+        }
+
+        void merge(Stats other) {
+            calls += other.calls;
+            nullResults += other.nullResults;
+            failures += other.failures;
+            totalNanos += other.totalNanos;
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] += other.histogram[i];
+            }
+        }
+
+        Stats minus(Stats other) {
+            Stats diff = copy();
+            diff.calls -= other.calls;
+            diff.nullResults -= other.nullResults;
+            diff.failures -= other.failures;
+            diff.totalNanos -= other.totalNanos;
+            for (int i = 0; i < histogram.length; i++) {
+                diff.histogram[i] -= other.histogram[i];
+            }
+            return diff;
+        }
+
+        Stats copy() {
+            Stats copy = new Stats();
+            copy.merge(this);
+            return copy;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getNullResults() {
+            return nullResults;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long[] getHistogram() {
+            return histogram.clone();
+        }
+
+        // Upper bound of the histogram bucket holding the given quantile, in nanos
+        public long percentile(double quantile) {
+            long rank = (long) Math.ceil(quantile * calls);
+            long seen = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                seen += histogram[i];
+                if (seen >= rank && seen > 0) {
+                    return i == 62 ? Long.MAX_VALUE : 1L << (i + 1);
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{calls=" + calls + ", nullResults=" + nullResults + ", failures=" + failures
+                    + ", totalNanos=" + totalNanos + ", histogram=" + Arrays.toString(histogram) + '}';
+        }
+    }
+
+    public static class StatsAccumulator extends AccumulatorV2<Stats, Stats> {
+        private Stats stats = new Stats();
+
+        void record(long nanos, boolean nullResult) {
+            stats.record(nanos, nullResult);
+        }
+
+        void failure(long nanos) {
+            stats.failure(nanos);
+        }
+
+        @Override
+        public boolean isZero() {
+            return stats.calls == 0 && stats.failures == 0;
+        }
+
+        @Override
+        public AccumulatorV2<Stats, Stats> copy() {
+            StatsAccumulator copy = new StatsAccumulator();
+            copy.stats = stats.copy();
+            return copy;
+        }
+
+        @Override
+        public void reset() {
+            stats = new Stats();
+        }
+
+        @Override
+        public void add(Stats v) {
+            stats.merge(v);
+        }
+
+        @Override
+        public void merge(AccumulatorV2<Stats, Stats> other) {
+            stats.merge(other.value());
+        }
+
+        @Override
+        public Stats value() {
+            return stats;
+        }
+    }
+
+    public static void main(String[] args) {
+        SparkSession spark = SparkSession.builder()
+                .appName("UdfMetrics")
+                .master("local[*]")
+                .getOrCreate();
+
+        UdfMetrics metrics = new UdfMetrics(spark);
+        metrics.reportAfterEachQuery();
+
+        metrics.registerNondeterministic("random", (UDF0<Double>) Math::random, DataTypes.DoubleType);
+        metrics.register("plusOne", (UDF1<Long, Long>) x -> x + 1, DataTypes.LongType);
+        metrics.register("strLen", (UDF2<String, Long, Long>) (s, x) -> s.length() + x, DataTypes.LongType);
+        metrics.register("oneArgFilter", (UDF1<Long, Boolean>) x -> x > 5, DataTypes.BooleanType);
+
+        spark.range(1, 1_000_000).createOrReplaceTempView("test");
+        spark.sql("SELECT sum(plusOne(id)), sum(strLen(cast(id AS STRING), id)) FROM test").show();
+        spark.sql("SELECT count(*) FROM test WHERE oneArgFilter(id) AND random() > 0.5").show();
+
+        System.out.print(metrics.report());
+        spark.stop();
+    }
+}
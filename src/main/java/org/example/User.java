@@ -1,7 +1,16 @@
 package org.example;
 
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Encoders;
+import org.apache.spark.sql.Row;
+
 import java.sql.Date;
 
+import static org.apache.spark.sql.functions.col;
+import static org.apache.spark.sql.functions.to_date;
+import static org.apache.spark.sql.functions.trim;
+import static org.apache.spark.sql.functions.when;
+
 public class User {
         private String name;
         private Integer age; // Integer to allow for null values
@@ -41,4 +50,15 @@ public class User {
                 ", hireSqlDate=" + hireSqlDate +
                 '}';
     }
-}
\ No newline at end of file
+
+    // Same parsing rules as Person.mapper, but written as column expressions so Catalyst can
+    // codegen them and push filters below the conversion instead of calling an opaque lambda per row.
+    // Expects string columns name, age and hire_date (MM-yyyy-dd).
+    public static Dataset<User> fromRaw(Dataset<Row> df) {
+        return df.select(
+                        when(trim(col("name")).notEqual(""), col("name")).as("name"),
+                        when(trim(col("age")).notEqual(""), col("age").cast("int")).as("age"),
+                        when(trim(col("hire_date")).notEqual(""), to_date(col("hire_date"), "MM-yyyy-dd")).as("hireSqlDate"))
+                .as(Encoders.bean(User.class));
+    }
+}
@@ -0,0 +1,69 @@
+package org.example;
+
+import org.apache.spark.sql.Column;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SaveMode;
+import org.apache.spark.sql.SparkSession;
+
+import java.nio.file.Files;
+
+import static org.apache.spark.sql.functions.col;
+import static org.apache.spark.sql.functions.rand;
+
+/**
+ * Writes the same generated table twice, once as-is and once with {@link ZOrderWriter} on (x, y),
+ * then runs selective filters on each column and reports time and files read.
+ * Usage: ZOrderBenchmark [rows] (defaults to 100M)
+ */
+public class ZOrderBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        long rows = args.length > 0 ? Long.parseLong(args[0]) : 100_000_000L;
+        String base = Files.createTempDirectory("zorder-benchmark").toString();
+        String plainPath = base + "/plain";
+        String zorderPath = base + "/zorder";
+
+        SparkSession spark = SparkSession.builder()
+                .appName("ZOrderBenchmark")
+                .master("local[*]")
+                .getOrCreate();
+
+        Dataset<Row> df = spark.range(rows)
+                .select(col("id"),
+                        rand(1).multiply(1_000_000).cast("long").as("x"),
+                        rand(2).multiply(1_000_000).cast("long").as("y"),
+                        rand(3).as("payload"));
+
+        long start = System.nanoTime();
+        df.repartition(200).write().mode(SaveMode.Overwrite).parquet(plainPath);
+        System.out.printf("plain write:   %d ms%n", (System.nanoTime() - start) / 1_000_000);
+
+        start = System.nanoTime();
+        ZOrderWriter.write(df, zorderPath, 64L * 1024 * 1024, "x", "y");
+        System.out.printf("z-order write: %d ms%n", (System.nanoTime() - start) / 1_000_000);
+
+        query(spark, plainPath, zorderPath, "x", 500_000, 501_000);
+        query(spark, plainPath, zorderPath, "y", 250_000, 251_000);
+
+        spark.stop();
+    }
+
+    private static void query(SparkSession spark, String plainPath, String zorderPath, String column, long lo, long hi) {
+        Column filter = col(column).between(lo, hi);
+
+        long start = System.nanoTime();
+        Dataset<Row> plain = spark.read().parquet(plainPath);
+        long plainCount = plain.where(filter).count();
+        long plainMs = (System.nanoTime() - start) / 1_000_000;
+
+        start = System.nanoTime();
+        int files = ZOrderWriter.files(spark, zorderPath, ZOrderWriter.overlaps(column, lo, hi)).size();
+        long zorderCount = ZOrderWriter.read(spark, zorderPath, ZOrderWriter.overlaps(column, lo, hi)).where(filter).count();
+        long zorderMs = (System.nanoTime() - start) / 1_000_000;
+        int totalFiles = spark.read().parquet(zorderPath).inputFiles().length;
+
+        System.out.printf("%s in [%d, %d]: plain %d rows in %d ms (%d files) | z-order %d rows in %d ms (%d of %d files)%n",
+                column, lo, hi, plainCount, plainMs, plain.inputFiles().length, zorderCount, zorderMs, files, totalFiles);
+    }
+}
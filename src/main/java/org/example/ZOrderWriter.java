@@ -0,0 +1,150 @@
+package org.example;
+
+import org.apache.spark.sql.Column;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Encoders;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SaveMode;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.types.DataType;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.NumericType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.apache.spark.sql.functions.coalesce;
+import static org.apache.spark.sql.functions.col;
+import static org.apache.spark.sql.functions.count;
+import static org.apache.spark.sql.functions.input_file_name;
+import static org.apache.spark.sql.functions.lit;
+import static org.apache.spark.sql.functions.max;
+import static org.apache.spark.sql.functions.min;
+import static org.apache.spark.sql.functions.shiftleft;
+import static org.apache.spark.sql.functions.shiftright;
+
+/**
+ * Writes Parquet clustered by a Z-order (Morton) curve over several columns, so rows that are close in
+ * any of the columns end up in the same files. Each column is scaled to an integer grid, the bits are
+ * interleaved into one long with native shift and bitwise expressions, and the data is range-partitioned
+ * and sorted on it, which also gives files of roughly equal size. After writing, per-file min/max of the
+ * clustered columns is stored as Parquet under {@value #STATS_DIR}, so they keep the columns' types
+ * (the directory is ignored by Spark's readers because of the underscore), and
+ * {@link #read(SparkSession, String, Column)} uses it to open only the files that can match.
+ * Numeric, date and timestamp columns are supported.
+ */
+public class ZOrderWriter {
+
+    public static final String STATS_DIR = "_zorder_stats";
+    public static final long DEFAULT_TARGET_FILE_BYTES = 128L * 1024 * 1024;
+
+    private static final String Z_COLUMN = "__zorder";
+
+    public static void write(Dataset<Row> df, String path, String... columns) {
+        write(df, path, DEFAULT_TARGET_FILE_BYTES, columns);
+    }
+
+    public static void write(Dataset<Row> df, String path, long targetFileBytes, String... columns) {
+        if (columns.length == 0) {
+            throw new IllegalArgumentException("At least one column is needed for Z-ordering");
+        }
+        for (String column : columns) {
+            DataType type = df.schema().apply(column).dataType();
+            if (!(type instanceof NumericType || type.equals(DataTypes.DateType) || type.equals(DataTypes.TimestampType))) {
+                throw new IllegalArgumentException("Cannot Z-order on " + column + " of type " + type.simpleString());
+            }
+        }
+
+        // All interleaved bits have to fit in a non-negative long
+        int bits = Math.min(31, 63 / columns.length);
+        long cells = (1L << bits) - 1;
+
+        List<Column> bounds = new ArrayList<>();
+        for (String column : columns) {
+            bounds.add(min(asDouble(df, column)));
+            bounds.add(max(asDouble(df, column)));
+        }
+        Row range = df.agg(bounds.get(0), bounds.subList(1, bounds.size()).toArray(new Column[0])).first();
+
+        Column[] scaled = new Column[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            double lo = range.isNullAt(2 * i) ? 0 : range.getDouble(2 * i);
+            double hi = range.isNullAt(2 * i + 1) ? 0 : range.getDouble(2 * i + 1);
+            scaled[i] = hi > lo
+                    ? coalesce(asDouble(df, columns[i]).minus(lo).divide(hi - lo).multiply(cells).cast("long"), lit(0L))
+                    : lit(0L);
+        }
+
+        long estimatedBytes = df.queryExecution().optimizedPlan().stats().sizeInBytes().longValue();
+        int numFiles = (int) Math.max(1, Math.min(Integer.MAX_VALUE, estimatedBytes / targetFileBytes));
+
+        df.withColumn(Z_COLUMN, interleave(scaled, bits))
+                .repartitionByRange(numFiles, col(Z_COLUMN))
+                .sortWithinPartitions(Z_COLUMN)
+                .drop(Z_COLUMN)
+                .write()
+                .mode(SaveMode.Overwrite)
+                .parquet(path);
+
+        writeStats(df.sparkSession(), path, columns);
+    }
+
+    // Bit b of column i lands at b * n + (n - 1 - i), so the first column holds the highest bit of each group
+    static Column interleave(Column[] values, int bits) {
+        int n = values.length;
+        Column z = lit(0L);
+        for (int bit = bits - 1; bit >= 0; bit--) {
+            for (int i = 0; i < n; i++) {
+                Column b = shiftright(values[i], bit).bitwiseAND(lit(1L));
+                z = z.bitwiseOR(shiftleft(b, bit * n + n - 1 - i));
+            }
+        }
+        return z;
+    }
+
+    // Dates go through their epoch value so they can be scaled like numbers
+    private static Column asDouble(Dataset<Row> df, String column) {
+        if (df.schema().apply(column).dataType().equals(DataTypes.DateType)) {
+            return col(column).cast("timestamp").cast("double");
+        }
+        return col(column).cast("double");
+    }
+
+    private static void writeStats(SparkSession spark, String path, String... columns) {
+        List<Column> aggregates = new ArrayList<>();
+        for (String column : columns) {
+            aggregates.add(min(col(column)).as(column + "_min"));
+            aggregates.add(max(col(column)).as(column + "_max"));
+        }
+        spark.read().parquet(path)
+                .withColumn("file", input_file_name())
+                .groupBy("file")
+                .agg(count(lit(1)).as("rows"), aggregates.toArray(new Column[0]))
+                .coalesce(1)
+                .write()
+                .mode(SaveMode.Overwrite)
+                .parquet(path + "/" + STATS_DIR);
+    }
+
+    // Stats predicate for "column has a value in [lo, hi]" in some row of the file
+    public static Column overlaps(String column, Object lo, Object hi) {
+        return col(column + "_min").leq(hi).and(col(column + "_max").geq(lo));
+    }
+
+    public static List<String> files(SparkSession spark, String path, Column statsPredicate) {
+        return spark.read().parquet(path + "/" + STATS_DIR)
+                .where(statsPredicate)
+                .select("file")
+                .as(Encoders.STRING())
+                .collectAsList();
+    }
+
+    // Reads only the files whose stats match; the caller still applies the row filter itself
+    public static Dataset<Row> read(SparkSession spark, String path, Column statsPredicate) {
+        List<String> files = files(spark, path, statsPredicate);
+        if (files.isEmpty()) {
+            return spark.read().parquet(path).where(lit(false));
+        }
+        return spark.read().parquet(files.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,96 @@
+package org.example;
+
+import org.apache.spark.util.sketch.CountMinSketch;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SketchesTest {
+
+    @Test
+    public void testHyperLogLogErrorBound() {
+        HyperLogLogAggregator.OfLong hll = new HyperLogLogAggregator.OfLong();
+        int distinct = 1_000_000;
+
+        // Two partial buffers with overlapping ids, merged like partial aggregates
+        byte[] left = hll.zero();
+        byte[] right = hll.zero();
+        for (long i = 0; i < distinct; i++) {
+            hll.reduce(i % 2 == 0 ? left : right, i);
+            hll.reduce(right, i % 1000);
+        }
+        long estimate = hll.finish(hll.merge(left, right));
+
+        // Standard error at precision 14 is ~0.8%, allow about four sigma
+        assertEquals(distinct, estimate, distinct * 0.035);
+    }
+
+    @Test
+    public void testHyperLogLogSmallCardinality() {
+        HyperLogLogAggregator.OfString hll = new HyperLogLogAggregator.OfString();
+        byte[] registers = hll.zero();
+        for (String s : Arrays.asList("Alice", "Bob", "Alice", "Charlie", "Bob")) {
+            hll.reduce(registers, s);
+        }
+        assertEquals(3L, hll.finish(registers));
+    }
+
+    @Test
+    public void testTDigestQuantileErrorBound() {
+        Random random = new Random(42);
+        int n = 1_000_000;
+        double[] values = new double[n];
+        TDigest first = new TDigest();
+        TDigest second = new TDigest();
+        for (int i = 0; i < n; i++) {
+            values[i] = random.nextGaussian() * 100;
+            (i % 2 == 0 ? first : second).add(values[i]);
+        }
+        TDigest digest = TDigest.fromBytes(first.merge(second).toBytes());
+        Arrays.sort(values);
+
+        assertEquals(n, digest.size(), 0.001);
+        assertTrue(digest.centroidCount() < 500);
+        for (double q : new double[]{0.01, 0.25, 0.5, 0.75, 0.99, 0.999}) {
+            double estimate = digest.quantile(q);
+            // Check the error in rank terms: the estimate must sit close to the requested quantile
+            int rank = Math.abs(Arrays.binarySearch(values, estimate));
+            double rankError = Math.abs((double) rank / n - q);
+            assertTrue(rankError < 0.01, "q=" + q + " rank error " + rankError);
+        }
+        assertEquals(values[0], digest.quantile(0), 1e-9);
+        assertEquals(values[n - 1], digest.quantile(1), 1e-9);
+    }
+
+    @Test
+    public void testCountMinErrorBound() throws IOException {
+        CountMinAggregator aggregator = new CountMinAggregator(0.001, 0.99, 7);
+        int total = 0;
+        int[] counts = new int[1000];
+        CountMinSketch left = aggregator.zero();
+        CountMinSketch right = aggregator.zero();
+        Random random = new Random(7);
+        for (int i = 0; i < 200_000; i++) {
+            // Skewed distribution: low ids are much more frequent
+            int item = (int) Math.min(999, Math.abs(random.nextGaussian()) * 100);
+            counts[item]++;
+            total++;
+            aggregator.reduce(i % 2 == 0 ? left : right, "item-" + item);
+        }
+        CountMinSketch sketch = CountMinSketch.readFrom(aggregator.finish(aggregator.merge(left, right)));
+
+        int withinBound = 0;
+        for (int item = 0; item < counts.length; item++) {
+            long estimate = sketch.estimateCount("item-" + item);
+            assertTrue(estimate >= counts[item]);
+            if (estimate - counts[item] <= 0.001 * total) {
+                withinBound++;
+            }
+        }
+        assertTrue(withinBound >= counts.length * 0.99);
+    }
+}
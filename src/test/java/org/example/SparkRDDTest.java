@@ -1,5 +1,8 @@
 package org.example;
 
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
 import org.apache.spark.SparkConf;
 import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
@@ -409,6 +412,31 @@ public class SparkRDDTest {
     }
 
 
+    @Test
+    public void testCompactUserKryoRoundTrip() {
+        Kryo kryo = new Kryo();
+        new CompactUserKryoRegistrator().registerClasses(kryo);
+
+        User user = new User();
+        user.setName("Mia");
+        user.setAge(22);
+        user.setHireSqlDate(java.sql.Date.valueOf("2024-11-01"));
+        User noAge = new User();
+        noAge.setName("Paul");
+        noAge.setHireSqlDate(java.sql.Date.valueOf("2024-05-12"));
+
+        for (User expected : asList(user, noAge)) {
+            Output output = new Output(64, -1);
+            kryo.writeObject(output, CompactUser.from(expected));
+            CompactUser read = kryo.readObject(new Input(output.toBytes()), CompactUser.class);
+
+            User actual = read.toUser();
+            assertEquals(expected.getName(), actual.getName());
+            assertEquals(expected.getAge(), actual.getAge());
+            assertEquals(expected.getHireSqlDate(), actual.getHireSqlDate());
+        }
+    }
+
     @Test
     public void testSortByAndSortByKey() {
         JavaRDD<Integer> rdd = sc.parallelize(Arrays.asList(5, 2, 8, 1, 3));
@@ -1,17 +1,42 @@
 package org.example;
 
+import com.github.luben.zstd.ZstdInputStream;
 import org.apache.spark.SparkConf;
+import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.api.java.function.MapFunction;
+import org.apache.spark.examples.sql.hive.JavaSparkHiveExample;
 import org.apache.spark.sql.*;
+import org.apache.spark.sql.api.java.UDF0;
+import org.apache.spark.sql.api.java.UDF1;
+import org.apache.spark.sql.catalyst.InternalRow;
+import org.apache.spark.sql.catalyst.catalog.CatalogStatistics;
+import org.apache.spark.sql.catalyst.expressions.GenericInternalRow;
 import org.apache.spark.sql.expressions.Window;
 import org.apache.spark.sql.expressions.WindowSpec;
 import org.apache.spark.sql.types.*;
+import org.apache.spark.util.LongAccumulator;
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
 import scala.collection.Seq;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.sql.Connection;
 import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
 import java.text.SimpleDateFormat;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.stream.Stream;
 
 import static org.apache.spark.sql.functions.col;
 import static org.apache.spark.sql.functions.to_date;
@@ -473,4 +498,826 @@ public class SparkSQLTest {
         userDataset.foreach((User p) -> System.out.println("User:" + p));
     }
 
+    @Test
+    public void testCSV_nativeUserConversion() {
+        Dataset<Row> csvDf = sparkSession.read()
+                .option("delimiter", ";")
+                .option("header", "true")
+                .csv("src/main/resources/people.csv");
+
+        List<Person> mapped = csvDf.select(col("name"), col("age"), col("hire_date"))
+                .map(mapper, Encoders.bean(Person.class))
+                .collectAsList();
+        List<User> converted = User.fromRaw(csvDf).collectAsList();
+
+        assertEquals(mapped.size(), converted.size());
+        for (int i = 0; i < mapped.size(); i++) {
+            assertEquals(mapped.get(i).getName(), converted.get(i).getName());
+            assertEquals(mapped.get(i).getAge(), converted.get(i).getAge());
+            assertEquals(mapped.get(i).getHireUtilDate() == null, converted.get(i).getHireSqlDate() == null);
+        }
+
+        Dataset<User> filtered = User.fromRaw(csvDf).filter(col("age").gt(20));
+        assertEquals(6, filtered.count());
+    }
+
+    @Test
+    public void testCSV_ageFilterPushedBeforeMapping() {
+        Dataset<Row> csvDf = sparkSession.read()
+                .option("delimiter", ";")
+                .option("header", "true")
+                .csv("src/main/resources/people.csv")
+                .select(col("name"), col("age"), col("hire_date"));
+
+        LongAccumulator deserialized = sparkSession.sparkContext().longAccumulator("deserialized");
+        Dataset<Person> people = csvDf
+                .filter(Person.ageGreaterThan(20))
+                .map((MapFunction<Row, Person>) row -> {
+                    deserialized.add(1);
+                    return mapper.call(row);
+                }, Encoders.bean(Person.class));
+
+        String plan = people.queryExecution().executedPlan().toString();
+        assertTrue(plan.contains("IsNotNull(age)"));
+
+        List<Person> result = people.collectAsList();
+        assertEquals(6, result.size());
+        assertEquals(6, deserialized.value());
+    }
+
+    @Test
+    public void testSchemaRegistry(@TempDir Path tempDir) throws IOException {
+        Path json = tempDir.resolve("people.json");
+        Files.writeString(json, "{\"name\":\"Justin\", \"age\":19}\n");
+
+        StructType schema = SchemaRegistry.jsonSchema(sparkSession, json.toString());
+        assertEquals(2, schema.fields().length);
+        assertTrue(Files.exists(SchemaRegistry.schemaFile(json.toAbsolutePath())));
+        assertEquals(1, SchemaRegistry.readJson(sparkSession, json.toString()).count());
+
+        Files.writeString(json, "{\"name\":\"Justin\", \"age\":19, \"job\":\"Developer\"}\n");
+        Files.setLastModifiedTime(json, FileTime.fromMillis(Files.getLastModifiedTime(json).toMillis() + 1000));
+
+        StructType changed = SchemaRegistry.jsonSchema(sparkSession, json.toString());
+        assertEquals(3, changed.fields().length);
+
+        // Deleting a file from a directory changes no remaining mtime but still invalidates the schema
+        Path dir = Files.createDirectory(tempDir.resolve("people"));
+        Files.writeString(dir.resolve("a.json"), "{\"name\":\"Andy\", \"age\":30}\n");
+        Files.writeString(dir.resolve("b.json"), "{\"name\":\"Justin\", \"job\":\"Developer\"}\n");
+        Files.setLastModifiedTime(dir.resolve("b.json"), Files.getLastModifiedTime(dir.resolve("a.json")));
+        assertEquals(3, SchemaRegistry.jsonSchema(sparkSession, dir.toString()).fields().length);
+        Files.delete(dir.resolve("b.json"));
+        assertEquals(2, SchemaRegistry.jsonSchema(sparkSession, dir.toString()).fields().length);
+    }
+
+    @Test
+    public void testBatchUdf() {
+        Dataset<Row> df = sparkSession.range(1, 10).toDF();
+
+        Dataset<Row> plusOne = BatchUdfs.withColumn(df, "plusOne", DataTypes.LongType, 4, BatchUdfBenchmark.PLUS_ONE, "id");
+        List<Row> results = plusOne.orderBy("id").collectAsList();
+        assertEquals(9, results.size());
+        for (Row row : results) {
+            assertEquals(row.getLong(0) + 1, row.getLong(1));
+        }
+
+        Dataset<Row> filtered = BatchUdfs.withColumn(df, "keep", DataTypes.BooleanType, BatchUdfBenchmark.ONE_ARG_FILTER, "id")
+                .where(col("keep"));
+        assertEquals(4, filtered.count());
+    }
+
+    @Test
+    public void testBatchUdfOverColumnarScan(@TempDir Path tempDir) {
+        String path = tempDir.resolve("batch_udf.parquet").toString();
+        // U+1F600 is outside the BMP: one code point, two UTF-16 chars
+        sparkSession.range(10_000)
+                .selectExpr("id", "concat('s', id, IF(id % 3 = 0, '\uD83D\uDE00', '')) AS s", "CAST(id % 7 AS INT) AS x",
+                        "array(id, id + 1) AS pair")
+                .write()
+                .parquet(path);
+        // Parquet only produces batches when whole-stage codegen is on
+        sparkSession.conf().set("spark.sql.codegen.wholeStage", "true");
+        Dataset<Row> df;
+        List<Row> rows;
+        try {
+            df = sparkSession.read().parquet(path);
+            assertTrue(df.queryExecution().executedPlan().treeString().contains("ColumnarToRow"));
+            // pair is not a supported type, but only the argument columns have to be
+            rows = BatchUdfs.withColumn(df, "len", DataTypes.IntegerType, BatchUdfBenchmark.STR_LEN, "s", "x").collectAsList();
+        } finally {
+            sparkSession.conf().set("spark.sql.codegen.wholeStage", "false");
+        }
+        assertEquals(10_000, rows.size());
+        for (Row row : rows) {
+            assertEquals(row.getString(1).length() + row.getInt(2), row.getInt(4));
+            assertEquals(row.getLong(0) + 1, row.<Long>getList(3).get(1));
+        }
+        // Row input gives the same answer
+        Dataset<Row> rowInput = df.where(col("id").geq(0));
+        assertEquals(rows.size(), BatchUdfs.withColumn(rowInput, "len", DataTypes.IntegerType, 100, BatchUdfBenchmark.STR_LEN, "s", "x")
+                .where("len = length(s) + x + IF(id % 3 = 0, 1, 0)").count());
+    }
+
+    @Test
+    public void testExpressionUdf() {
+        ExpressionUdfs.register(sparkSession, "oneArgFilterExpr", 1, cols -> cols[0].gt(5));
+        sparkSession.range(1, 10).createOrReplaceTempView("expression_udf_test");
+
+        Dataset<Row> result = sparkSession.sql("SELECT * FROM expression_udf_test WHERE oneArgFilterExpr(id)");
+        String plan = result.queryExecution().optimizedPlan().toString();
+        assertFalse(plan.contains("UDF"));
+        assertEquals(4, result.count());
+
+        ExpressionUdfs.register(sparkSession, "strLenExpr", 2, cols -> ExpressionUdfs.utf16Length(cols[0]).plus(cols[1]));
+        String s = "a\u00e9\u4e2d\ud83d\ude00";
+        assertEquals(s.length() + 1, sparkSession.sql("SELECT strLenExpr('" + s + "', 1)").first().getInt(0));
+    }
+
+    // Static so the aggregator does not capture the (non-serializable) test instance
+    static class LongAverage extends SumCountAggregator<Long> {
+        @Override
+        protected long value(Long input) {
+            return input;
+        }
+    }
+
+    @Test
+    public void testSumCountAggregator() {
+        Dataset<Long> salaries = sparkSession.createDataset(Arrays.asList(3000L, 4500L, 3500L, 4000L), Encoders.LONG());
+
+        Dataset<Double> result = salaries.select(new LongAverage().toColumn());
+
+        assertEquals(3750.0, result.first(), 0.001);
+        for (StructField field : new LongAverage().bufferEncoder().schema().fields()) {
+            assertFalse(field.nullable(), field.toString());
+        }
+    }
+
+    @Test
+    public void testDeclarativeAggregate() {
+        new DeclarativeAggregate()
+                .buffer("sum", DeclarativeAggregate.Merge.SUM, a -> a[0])
+                .buffer("count", DeclarativeAggregate.Merge.COUNT, a -> a[0])
+                .evaluate(b -> b.get("sum").divide(b.get("count")))
+                .register(sparkSession, "declarativeAverage", 1);
+
+        sparkSession.createDataFrame(Arrays.asList(
+                RowFactory.create("HR", 1000L),
+                RowFactory.create("HR", 1500L),
+                RowFactory.create("Finance", 2000L)
+        ), new StructType()
+                .add("department", DataTypes.StringType, false)
+                .add("salary", DataTypes.LongType, false)
+        ).createOrReplaceTempView("declarative_employees");
+
+        Dataset<Row> result = sparkSession.sql(
+                "SELECT department, declarativeAverage(salary) AS avg FROM declarative_employees GROUP BY department ORDER BY department");
+        String plan = result.queryExecution().executedPlan().toString();
+        assertFalse(plan.contains("ObjectHashAggregate"));
+
+        List<Row> rows = result.collectAsList();
+        assertEquals(2000.0, rows.get(0).getDouble(1), 0.001);
+        assertEquals(1250.0, rows.get(1).getDouble(1), 0.001);
+    }
+
+    @Test
+    public void testSketchFunctions() {
+        Sketches.register(sparkSession);
+        sparkSession.range(100_000)
+                .selectExpr("id % 5000 AS user_id", "cast(id % 10 AS STRING) AS page", "cast(id AS DOUBLE) AS latency")
+                .createOrReplaceTempView("sketch_requests");
+
+        Row row = sparkSession.sql("SELECT hll_distinct_long(user_id), "
+                + "tdigest_quantile(tdigest(latency), 0.5), "
+                + "count_min_estimate(count_min(page), '3') FROM sketch_requests").first();
+
+        assertEquals(5000, row.getLong(0), 5000 * 0.035);
+        assertEquals(50_000, row.getDouble(1), 100_000 * 0.01);
+        // Count-Min never underestimates and overestimates by at most eps * N (with the sketch's confidence)
+        assertTrue(row.getLong(2) >= 10_000);
+        assertTrue(row.getLong(2) <= 10_000 + CountMinAggregator.DEFAULT_EPS * 100_000, String.valueOf(row.getLong(2)));
+    }
+
+    @Test
+    public void testTDigestQuantileDecimalLiteral() {
+        Sketches.register(sparkSession);
+        sparkSession.range(100_000).selectExpr("cast(id AS DOUBLE) AS latency").createOrReplaceTempView("sketch_latencies");
+
+        // 0.99 is a DECIMAL(2,2) literal; the cast and the column are DOUBLE
+        Row row = sparkSession.sql("SELECT tdigest_quantile(digest, 0.99), tdigest_quantile(digest, CAST(0.99 AS DOUBLE)), "
+                + "tdigest_quantile(digest, q) FROM (SELECT tdigest(latency) AS digest, 0.99D AS q FROM sketch_latencies)").first();
+
+        assertEquals(99_000, row.getDouble(0), 100_000 * 0.01);
+        assertEquals(row.getDouble(0), row.getDouble(1));
+        assertEquals(row.getDouble(0), row.getDouble(2));
+    }
+
+    @Test
+    public void testParquetSchemaMerger(@TempDir Path tempDir) throws IOException {
+        String table = tempDir.resolve("test_table").toString();
+        sparkSession.range(1, 6).selectExpr("cast(id AS INT) AS value", "cast(id * id AS INT) AS square")
+                .write().parquet(table + "/key=1");
+        sparkSession.range(6, 11).selectExpr("cast(id AS INT) AS value", "cast(id * id * id AS INT) AS cube")
+                .write().parquet(table + "/key=2");
+
+        ParquetSchemaMerger merger = new ParquetSchemaMerger(sparkSession, 4);
+        Dataset<Row> merged = merger.read(table);
+
+        assertArrayEquals(new String[]{"value", "square", "cube", "key"}, merged.columns());
+        assertEquals(10, merged.count());
+        assertEquals(sparkSession.read().option("mergeSchema", true).parquet(table).schema().fieldNames().length,
+                merged.schema().fieldNames().length);
+    }
+
+    @Test
+    public void testParquetSchemaMergerNested(@TempDir Path tempDir) throws IOException {
+        String table = tempDir.resolve("nested").toString();
+        sparkSession.sql("SELECT array(named_struct('a', 1)) AS items, map('k', named_struct('x', 1)) AS attrs")
+                .write().parquet(table + "/_c=1");
+        sparkSession.sql("SELECT array(named_struct('a', 2, 'b', 'two')) AS items, map('k', named_struct('y', 2L)) AS attrs")
+                .write().parquet(table + "/_c=2");
+        // Files without the .parquet suffix are read by Spark too
+        try (Stream<Path> files = Files.list(tempDir.resolve("nested/_c=2"))) {
+            Path file = files.filter(p -> p.getFileName().toString().endsWith(".parquet")).findFirst().orElseThrow();
+            Files.move(file, file.resolveSibling("data"));
+        }
+
+        Dataset<Row> merged = new ParquetSchemaMerger(sparkSession, 4).read(table);
+
+        assertEquals(sparkSession.read().option("mergeSchema", true).parquet(table).schema(), merged.schema());
+        assertEquals(2, merged.count());
+
+        Path empty = Files.createDirectory(tempDir.resolve("empty"));
+        AnalysisException e = assertThrows(AnalysisException.class,
+                () -> new ParquetSchemaMerger(sparkSession, 4).mergedSchema(empty.toString()));
+        assertTrue(e.getMessage().contains("Unable to infer schema for Parquet"));
+    }
+
+    @Test
+    public void testBloomFilterSkipsRowGroups(@TempDir Path tempDir) throws Exception {
+        String path = tempDir.resolve("users.parquet").toString();
+        // Random keys, so every row group's min/max covers the looked-up key and only the bloom filter can skip it
+        sparkSession.range(200_000).selectExpr("md5(cast(id AS STRING)) AS key", "id")
+                .coalesce(1)
+                .write()
+                .option("parquet.bloom.filter.enabled#key", "true")
+                .option("parquet.enable.dictionary", "false")
+                .option("parquet.block.size", "65536")
+                .parquet(path);
+
+        BloomFilterAdvisor advisor = new BloomFilterAdvisor();
+        sparkSession.listenerManager().register(advisor);
+        try {
+            String key = sparkSession.sql("SELECT md5('12345')").first().getString(0);
+            for (int i = 0; i < 2; i++) {
+                assertEquals(1, sparkSession.read().parquet(path).where(col("key").equalTo(key)).count());
+            }
+            assertEquals(1, sparkSession.read().parquet(path).where(col("id").gt(199_998)).count());
+            assertTrue(advisor.awaitQueries(4, Duration.ofMinutes(1)));
+
+            BloomFilterScans.ScanStats stats = BloomFilterScans.parquet(sparkSession, path, "key", key);
+            assertTrue(stats.total() > 10, stats.toString());
+            assertEquals(stats.total(), stats.scannedWithoutBloom(), stats.toString());
+            assertTrue(stats.scanned() >= 1 && stats.scanned() <= 2, stats.toString());
+
+            List<BloomFilterAdvisor.Recommendation> recommendations = advisor.recommend(2);
+            assertEquals(1, recommendations.size());
+            assertEquals("key", recommendations.get(0).column());
+            assertEquals("parquet", recommendations.get(0).format());
+        } finally {
+            sparkSession.listenerManager().unregister(advisor);
+        }
+    }
+
+    @Test
+    public void testJdbcPartitionedReader() throws Exception {
+        String url = "jdbc:h2:mem:partitioned_read;DB_CLOSE_DELAY=-1";
+        try (Connection connection = DriverManager.getConnection(url);
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE people (id BIGINT PRIMARY KEY, name VARCHAR(64), hired DATE)");
+            statement.execute("INSERT INTO people SELECT X, 'person-' || X, DATEADD(DAY, X, DATE '2000-01-01') FROM SYSTEM_RANGE(1, 10000)");
+        }
+
+        JdbcPartitionedReader reader = new JdbcPartitionedReader(sparkSession, url, new Properties(), 4, 1000);
+        JdbcPartitionedReader.Plan plan = reader.plan("people", null);
+        assertEquals("ID", plan.partitionColumn());
+        assertEquals("1", plan.lowerBound());
+        assertEquals("10000", plan.upperBound());
+        assertEquals(4, plan.numPartitions());
+        assertEquals(10_000, plan.rowCount());
+        assertTrue(plan.fetchSize() >= 100);
+
+        Dataset<Row> people = reader.read(plan);
+        assertEquals(4, people.rdd().getNumPartitions());
+        List<JdbcPartitionedReader.ConnectionStats> stats = reader.measure(people);
+        assertEquals(4, stats.size());
+        assertEquals(10_000, stats.stream().mapToLong(JdbcPartitionedReader.ConnectionStats::rows).sum());
+
+        JdbcPartitionedReader.Plan byDate = reader.plan("people", "hired");
+        assertEquals("HIRED", byDate.partitionColumn());
+        assertEquals("2000-01-02", byDate.lowerBound());
+        assertEquals(10_000, reader.read(byDate).count());
+    }
+
+    @Test
+    public void testJdbcUpsertWriter() throws Exception {
+        String url = "jdbc:h2:mem:upsert;DB_CLOSE_DELAY=-1";
+        try (Connection connection = DriverManager.getConnection(url);
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE accounts (id BIGINT PRIMARY KEY, name VARCHAR(64), balance DECIMAL(10, 2))");
+            statement.execute("INSERT INTO accounts VALUES (1, 'old', 0), (5000, 'untouched', 0)");
+        }
+
+        Dataset<Row> accounts = sparkSession.range(1, 1001)
+                .selectExpr("id", "concat('name-', id) AS name", "cast(id * 1.5 AS DECIMAL(10, 2)) AS balance")
+                .repartition(4);
+        JdbcUpsertWriter writer = new JdbcUpsertWriter(sparkSession, url, new Properties(), 100, 2);
+
+        JdbcUpsertWriter.Result first = writer.upsert(accounts, "accounts", "id");
+        assertEquals(1000, first.rows());
+        assertEquals(1000, first.mergedRows());
+        // Re-running the same load updates in place instead of duplicating
+        JdbcUpsertWriter.Result second = writer.upsert(accounts, "accounts", "id");
+        assertEquals(1000, second.rows());
+
+        try (Connection connection = DriverManager.getConnection(url);
+             Statement statement = connection.createStatement()) {
+            ResultSet rs = statement.executeQuery("SELECT COUNT(*), SUM(CASE WHEN name = 'old' THEN 1 ELSE 0 END) FROM accounts");
+            rs.next();
+            assertEquals(1001, rs.getLong(1));
+            assertEquals(0, rs.getLong(2));
+            rs = statement.executeQuery("SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME LIKE 'ACCOUNTS_STAGE%'");
+            rs.next();
+            assertEquals(0, rs.getLong(1));
+        }
+    }
+
+    @Test
+    public void testFastCsvReader() throws IOException {
+        String path = "src/main/resources/people.csv";
+        Dataset<Row> expected = sparkSession.read()
+                .option("delimiter", ";")
+                .option("header", "true")
+                .option("inferSchema", "true")
+                .csv(path);
+        Dataset<Row> fast = FastCsvReader.read(sparkSession, path, ';');
+
+        assertEquals(expected.schema(), fast.schema());
+        assertEquals(expected.collectAsList(), fast.collectAsList());
+        assertEquals(expected.filter(col("age").gt(30)).count(), fast.filter(col("age").gt(30)).count());
+    }
+
+    @Test
+    public void testFastCsvReaderSamplesEveryFile(@TempDir Path tempDir) throws IOException {
+        Files.writeString(tempDir.resolve("a.csv"), "name;age;score;rate\nAndy;30;1.5;2\n");
+        Files.writeString(tempDir.resolve("b.csv"), "name;age;score;rate\nJustin;3000000000;NaN;1d\n");
+
+        Dataset<Row> fast = FastCsvReader.read(sparkSession, tempDir.toString(), ';');
+
+        // age widens to long from the second file; "NaN" and "1d" are not numbers to the byte parser
+        assertEquals(DataTypes.LongType, fast.schema().apply("age").dataType());
+        assertEquals(DataTypes.StringType, fast.schema().apply("score").dataType());
+        assertEquals(DataTypes.StringType, fast.schema().apply("rate").dataType());
+        assertEquals(List.of(RowFactory.create("Andy", 30L, "1.5", "2"), RowFactory.create("Justin", 3_000_000_000L, "NaN", "1d")),
+                fast.orderBy("name").collectAsList());
+    }
+
+    @Test
+    public void testSeekableZstdText(@TempDir Path tempDir) throws IOException {
+        String path = tempDir.resolve("output_compressed").toString();
+        Dataset<Row> lines = sparkSession.range(100_000)
+                .selectExpr("concat('line-', id, repeat('x', cast(id % 50 AS INT))) AS value")
+                .coalesce(1);
+        SeekableZstdText.write(lines, path, 64 * 1024, SeekableZstdText.DEFAULT_LEVEL);
+
+        // Small splits so the single file is read by several tasks
+        Dataset<Row> read = SeekableZstdText.read(sparkSession, path, 32 * 1024);
+        assertTrue(read.rdd().getNumPartitions() > 1);
+        assertEquals(100_000, read.count());
+        assertEquals(0, lines.except(read).count());
+        // Stops each task early; the task's completion closes the file
+        assertEquals(5, read.limit(5).collectAsList().size());
+
+        // Plain zstd decoders skip the seek table
+        Path file = Files.list(tempDir.resolve("output_compressed"))
+                .filter(p -> p.getFileName().toString().endsWith(SeekableZstdText.EXTENSION))
+                .findFirst()
+                .orElseThrow();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ZstdInputStream(Files.newInputStream(file))))) {
+            assertEquals(100_000, reader.lines().count());
+        }
+    }
+
+    @Test
+    public void testMappedTextSource(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("data.txt");
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            text.append("line ").append(i).append(" ").append("x".repeat(i % 37)).append(i % 5 == 0 ? "\r\n" : "\n");
+            if (i % 100 == 0) {
+                text.append("\n");
+            }
+        }
+        text.append("Michael, 29 \u00fcn\u00efcode");
+        Files.writeString(file, text.toString());
+
+        Dataset<Row> expected = sparkSession.read().text(file.toString());
+        // Tiny splits, so lines cross range boundaries everywhere
+        Dataset<Row> mapped = MappedTextSource.read(sparkSession, file.toString(), 100);
+
+        assertTrue(mapped.rdd().getNumPartitions() > 100);
+        assertEquals(expected.collectAsList(), mapped.collectAsList());
+        assertEquals(1, mapped.where(col("value").contains("\u00fcn\u00efcode")).count());
+        assertEquals(expected.limit(3).collectAsList(), mapped.limit(3).collectAsList());
+    }
+
+    @Test
+    public void testChunkedWholeText(@TempDir Path tempDir) throws IOException {
+        byte[] big = new byte[10_500];
+        new Random(7).nextBytes(big);
+        Files.write(tempDir.resolve("big.bin"), big);
+        Files.writeString(tempDir.resolve("small.txt"), "Michael, 29\nAndy, 30\n");
+
+        // 1000-byte chunks in 3000-byte splits: big.bin is read by four tasks
+        List<Row> rows = ChunkedWholeText.read(sparkSession, tempDir.toString(), 1000, 3000)
+                .orderBy("path", "offset")
+                .collectAsList();
+
+        Map<String, ByteArrayOutputStream> files = new TreeMap<>();
+        for (Row row : rows) {
+            ByteArrayOutputStream out = files.computeIfAbsent(row.getString(0), p -> new ByteArrayOutputStream());
+            assertEquals(out.size(), row.getLong(1));
+            byte[] chunk = (byte[]) row.get(2);
+            assertTrue(chunk.length <= 1000);
+            out.write(chunk, 0, chunk.length);
+            assertEquals(out.size() == (row.getString(0).endsWith("big.bin") ? big.length : 21), row.getBoolean(3));
+        }
+        assertEquals(12, rows.size());
+        List<byte[]> contents = new ArrayList<>();
+        files.values().forEach(out -> contents.add(out.toByteArray()));
+        assertArrayEquals(big, contents.get(0));
+        assertEquals("Michael, 29\nAndy, 30\n", new String(contents.get(1), StandardCharsets.UTF_8));
+        // Stops each task after its first chunk; the task's completion closes the file
+        assertEquals(2, ChunkedWholeText.read(sparkSession, tempDir.toString(), 1000, 3000).limit(2).collectAsList().size());
+    }
+
+    @Test
+    public void testColumnarTableLoader(@TempDir Path tempDir) throws Exception {
+        List<String> lines = new ArrayList<>();
+        for (int key = 0; key < 500; key++) {
+            lines.add(key + ColumnarTableLoader.HIVE_DEFAULT_DELIMITER + "val_" + key);
+        }
+        lines.add("not a number" + ColumnarTableLoader.HIVE_DEFAULT_DELIMITER + "val_x");
+        Path file = Files.write(tempDir.resolve("kv1.txt"), lines);
+        StructType schema = new StructType()
+                .add("key", DataTypes.IntegerType)
+                .add("value", DataTypes.StringType);
+
+        try {
+            ColumnarTableLoader.Result result = ColumnarTableLoader.load(sparkSession, file.toString(), "kv_columnar", schema);
+
+            assertEquals(501, result.rows());
+            assertEquals(2, result.columnsWithStats());
+            assertTrue(result.sizeInBytes() > 0);
+            assertEquals(1, ColumnarTableLoader.statistics(sparkSession, "kv_columnar")
+                    .colStats().get("key").get().nullCount().get().longValue());
+            // Collected during the write, yet the same as a separate ANALYZE pass
+            CatalogStatistics observed = ColumnarTableLoader.statistics(sparkSession, "kv_columnar");
+            sparkSession.sql("ANALYZE TABLE kv_columnar COMPUTE STATISTICS FOR ALL COLUMNS");
+            CatalogStatistics analyzed = ColumnarTableLoader.statistics(sparkSession, "kv_columnar");
+            assertEquals(analyzed.sizeInBytes(), observed.sizeInBytes());
+            assertEquals(analyzed.rowCount(), observed.rowCount());
+            assertEquals(analyzed.colStats(), observed.colStats());
+            assertEquals(501, sparkSession.table("kv_columnar").count());
+            assertEquals(1, sparkSession.sql("SELECT * FROM kv_columnar WHERE key = 238").count());
+        } finally {
+            sparkSession.sql("DROP TABLE IF EXISTS kv_columnar");
+        }
+    }
+
+    @Test
+    public void testJoinStrategyAdvisor() {
+        List<JavaSparkHiveExample.Record> records = new ArrayList<>();
+        for (int key = 1; key < 100; key++) {
+            JavaSparkHiveExample.Record record = new JavaSparkHiveExample.Record();
+            record.setKey(key);
+            record.setValue("val_" + key);
+            records.add(record);
+        }
+        sparkSession.createDataFrame(records, JavaSparkHiveExample.Record.class).createOrReplaceTempView("advisor_records");
+        sparkSession.range(100_000)
+                .selectExpr("CAST(id % 500 AS INT) AS key", "concat('val_', id % 500) AS value")
+                .createOrReplaceTempView("advisor_src");
+        String sql = "SELECT * FROM advisor_records r JOIN advisor_src s ON r.key = s.key";
+        long maxBroadcastBytes = 64 * 1024;
+
+        // autoBroadcastJoinThreshold is -1 here, so without the advisor this is a sort-merge join
+        JoinStrategyAdvisor.Comparison comparison = JoinStrategyAdvisor.compare(sparkSession, sql, maxBroadcastBytes);
+        assertEquals(List.of("SortMergeJoin"), comparison.joinsBefore());
+        assertEquals(List.of("BroadcastHashJoin"), comparison.joinsAfter());
+        assertTrue(comparison.planAfter().contains("BroadcastExchange"));
+
+        JoinStrategyAdvisor advisor = new JoinStrategyAdvisor(maxBroadcastBytes);
+        List<JoinStrategyAdvisor.Advice> advice = advisor.advise(sparkSession.sql(sql));
+        assertEquals(JoinStrategyAdvisor.Side.LEFT, advice.get(0).broadcast());
+        assertTrue(advice.get(0).rightBytes() > maxBroadcastBytes);
+        // The preserved side of an outer join cannot be broadcast
+        advice = advisor.advise(sparkSession.sql("SELECT * FROM advisor_records r LEFT JOIN advisor_src s ON r.key = s.key"));
+        assertEquals(JoinStrategyAdvisor.Side.NONE, advice.get(0).broadcast());
+
+        try {
+            JoinStrategyAdvisor installed = JoinStrategyAdvisor.install(sparkSession, maxBroadcastBytes);
+            Dataset<Row> joined = sparkSession.sql(sql);
+            assertEquals(99 * 200, joined.count());
+            assertEquals(List.of("BroadcastHashJoin"), JoinStrategyAdvisor.joinOperators(joined));
+            assertTrue(installed.hintedJoins() > 0);
+        } finally {
+            JoinStrategyAdvisor.uninstall(sparkSession);
+        }
+    }
+
+    @Test
+    public void testBeanRelationBuilder() throws IOException {
+        List<JavaSparkHiveExample.Record> records = new ArrayList<>();
+        for (int key = 0; key < 5000; key++) {
+            JavaSparkHiveExample.Record record = new JavaSparkHiveExample.Record();
+            record.setKey(key);
+            record.setValue(key % 7 == 0 ? null : "val_" + key);
+            records.add(record);
+        }
+        // 16 KB chunks and room for two of them in memory, so the rest are spilled
+        BeanRelationBuilder<JavaSparkHiveExample.Record> builder =
+                new BeanRelationBuilder<>(sparkSession, JavaSparkHiveExample.Record.class, 16 * 1024, 40 * 1024);
+        Dataset<Row> streamed = builder.createDataFrame(records.stream());
+        Dataset<Row> expected = sparkSession.createDataFrame(records, JavaSparkHiveExample.Record.class);
+
+        assertEquals(expected.schema(), streamed.schema());
+        assertTrue(builder.chunks() > 2);
+        assertEquals(builder.chunks() - 2, builder.spilledChunks());
+        assertEquals(builder.chunks(), streamed.rdd().getNumPartitions());
+        assertEquals(expected.orderBy("key").collectAsList(), streamed.orderBy("key").collectAsList());
+        assertEquals(0, new BeanRelationBuilder<>(sparkSession, JavaSparkHiveExample.Record.class)
+                .createDataFrame(Collections.<JavaSparkHiveExample.Record>emptyIterator()).count());
+    }
+
+    @Test
+    public void testCachingExternalCatalog() {
+        CachingExternalCatalog cache = CachingExternalCatalog.install(sparkSession, Duration.ofHours(1));
+        try {
+            sparkSession.range(10).selectExpr("id AS key").write().saveAsTable("cached_src");
+            for (int i = 0; i < 20; i++) {
+                sparkSession.sql("SELECT * FROM cached_src WHERE key = " + i).collectAsList();
+            }
+            CachingExternalCatalog.Metrics metrics = cache.metrics();
+            assertTrue(metrics.hits() > metrics.misses(), metrics.toString());
+            assertSame(cache, CachingExternalCatalog.install(sparkSession));
+
+            // DDL through the session invalidates before it returns
+            sparkSession.sql("DROP TABLE cached_src");
+            assertFalse(sparkSession.catalog().tableExists("cached_src"));
+            sparkSession.sql("CREATE TABLE cached_src (key INT, value STRING) USING parquet");
+            assertEquals(2, sparkSession.table("cached_src").schema().size());
+            assertTrue(cache.metrics().invalidations() >= 2);
+        } finally {
+            sparkSession.sql("DROP TABLE IF EXISTS cached_src");
+            CachingExternalCatalog.uninstall(sparkSession);
+        }
+        assertFalse(sparkSession.sessionState().catalog().externalCatalog() instanceof CachingExternalCatalog);
+
+        CachingExternalCatalog expiring = new CachingExternalCatalog(
+                sparkSession.sessionState().catalog().externalCatalog(), Duration.ZERO);
+        expiring.getDatabase("default");
+        expiring.getDatabase("default");
+        assertEquals(new CachingExternalCatalog.Metrics(0, 2, 1, 0), expiring.metrics());
+    }
+
+    @Test
+    public void testCachingExternalCatalogSeesHiveInserts(@TempDir Path tempDir) {
+        // Derby boots with the metastore and would otherwise write derby.log to the working directory
+        System.setProperty("derby.stream.error.file", tempDir.resolve("derby.log").toString());
+        // The catalog implementation is fixed per shared state, so build a Hive session next to the test's one
+        SparkSession.clearActiveSession();
+        SparkSession.clearDefaultSession();
+        SparkSession hive = SparkSession.builder()
+                .config("spark.sql.warehouse.dir", tempDir.resolve("warehouse").toString())
+                // With an existing context, non-static options go to the Hadoop conf as they are, unprefixed
+                .config("javax.jdo.option.ConnectionURL",
+                        "jdbc:derby:;databaseName=" + tempDir.resolve("metastore_db") + ";create=true")
+                .enableHiveSupport()
+                .getOrCreate();
+        SparkSession.setDefaultSession(sparkSession);
+        SparkSession.setActiveSession(sparkSession);
+        assertNotSame(sparkSession, hive);
+
+        CachingExternalCatalog cache = CachingExternalCatalog.install(hive, Duration.ofHours(1));
+        try {
+            hive.sql("SET hive.exec.dynamic.partition.mode=nonstrict");
+            hive.sql("CREATE TABLE cached_part (key INT) USING hive PARTITIONED BY (ds STRING)");
+            hive.sql("INSERT INTO cached_part PARTITION (ds = 'a') VALUES (1)");
+            assertEquals(1, hive.table("cached_part").count());
+
+            // Both go through the shared catalog's loadPartition/loadDynamicPartitions, not the cache
+            hive.sql("INSERT INTO cached_part PARTITION (ds = 'b') VALUES (2)");
+            hive.sql("INSERT INTO cached_part PARTITION (ds) VALUES (3, 'c')");
+            assertEquals(List.of(RowFactory.create(1, "a"), RowFactory.create(2, "b"), RowFactory.create(3, "c")),
+                    hive.sql("SELECT key, ds FROM cached_part ORDER BY key").collectAsList());
+            assertEquals(3, hive.sql("SHOW PARTITIONS cached_part").count());
+            assertTrue(cache.metrics().hits() > 0, cache.metrics().toString());
+        } finally {
+            hive.sql("DROP TABLE IF EXISTS cached_part");
+            CachingExternalCatalog.uninstall(hive);
+        }
+    }
+
+    @Test
+    public void testUdfMetrics() {
+        UdfMetrics metrics = new UdfMetrics(sparkSession);
+        metrics.register("metered_plus_one", (UDF1<Long, Long>) x -> x + 1, DataTypes.LongType);
+        metrics.register("metered_odd_or_null", (UDF1<Long, Long>) x -> x % 2 == 0 ? null : x, DataTypes.LongType);
+        metrics.registerNondeterministic("metered_random", (UDF0<Double>) Math::random, DataTypes.DoubleType);
+
+        Row row = sparkSession.sql("SELECT sum(metered_plus_one(id)), count(metered_odd_or_null(id)) FROM range(1000)").first();
+        assertEquals(500_500L, row.getLong(0));
+        assertEquals(500L, row.getLong(1));
+
+        Map<String, UdfMetrics.Stats> stats = metrics.snapshot();
+        UdfMetrics.Stats plusOne = stats.get("metered_plus_one");
+        assertEquals(1000, plusOne.getCalls());
+        assertEquals(0, plusOne.getNullResults());
+        assertEquals(0, plusOne.getFailures());
+        assertEquals(1000, Arrays.stream(plusOne.getHistogram()).sum());
+        assertTrue(plusOne.getTotalNanos() > 0);
+        assertTrue(plusOne.percentile(0.5) > 0 && plusOne.percentile(0.5) <= plusOne.percentile(1.0));
+        assertEquals(500, stats.get("metered_odd_or_null").getNullResults());
+        assertEquals(0, stats.get("metered_random").getCalls());
+
+        // Deterministic UDFs may be folded or reordered; the nondeterministic one must stay as written
+        assertFalse(sparkSession.sql("SELECT metered_random() > 0.5").queryExecution().analyzed().expressions().apply(0).deterministic());
+        assertTrue(sparkSession.sql("SELECT metered_plus_one(1)").queryExecution().analyzed().expressions().apply(0).deterministic());
+    }
+
+    @Test
+    public void testZOrderWriter(@TempDir Path tempDir) {
+        String path = tempDir.resolve("zorder").toString();
+        Dataset<Row> df = sparkSession.range(10_000)
+                .selectExpr("id % 100 AS x", "id DIV 100 AS y", "date_add(DATE'2020-01-01', CAST(id % 100 AS INT)) AS d");
+        long fileBytes = df.queryExecution().optimizedPlan().stats().sizeInBytes().longValue() / 16;
+        ZOrderWriter.write(df, path, fileBytes, "x", "y", "d");
+
+        // x = 0b11 and y = 0b01 interleave to 0b1011
+        assertEquals(11L, sparkSession.range(1)
+                .select(ZOrderWriter.interleave(new Column[]{functions.lit(3L), functions.lit(1L)}, 2))
+                .first().getLong(0));
+
+        Dataset<Row> stats = sparkSession.read().parquet(path + "/" + ZOrderWriter.STATS_DIR);
+        assertEquals(DataTypes.DateType, stats.schema().apply("d_min").dataType());
+        assertEquals(DataTypes.LongType, stats.schema().apply("x_max").dataType());
+        int totalFiles = sparkSession.read().parquet(path).inputFiles().length;
+        assertTrue(totalFiles >= 8, "files: " + totalFiles);
+        assertEquals(totalFiles, stats.count());
+        assertEquals(10_000L, stats.agg(functions.sum("rows")).first().getLong(0));
+
+        // Clustered on both columns, so a small box touches few files
+        Column box = col("x").between(10, 14).and(col("y").between(10, 14));
+        Column boxStats = ZOrderWriter.overlaps("x", 10, 14).and(ZOrderWriter.overlaps("y", 10, 14));
+        assertTrue(ZOrderWriter.files(sparkSession, path, boxStats).size() <= totalFiles / 4);
+        assertEquals(25, ZOrderWriter.read(sparkSession, path, boxStats).where(box).count());
+        Column dateStats = ZOrderWriter.overlaps("d", Date.valueOf("2020-01-11"), Date.valueOf("2020-01-15"));
+        assertTrue(ZOrderWriter.files(sparkSession, path, dateStats).size() < totalFiles);
+    }
+
+    @Test
+    public void testFileCompactor(@TempDir Path tempDir) throws IOException {
+        String table = tempDir.resolve("small_files").toString();
+        sparkSession.range(1_000).selectExpr("id", "id % 2 AS part", "concat('val_', id) AS value")
+                .repartition(10)
+                .write()
+                .partitionBy("part")
+                .parquet(table);
+        // A partition directory with a leading underscore is still data
+        sparkSession.range(100).selectExpr("id", "'x' AS value").repartition(5).write().parquet(table + "/part=_x");
+        List<Row> before = sparkSession.read().parquet(table).orderBy("id", "part").collectAsList();
+
+        FileCompactor.Result result = new FileCompactor(sparkSession, "parquet", 16L * 1024 * 1024, 2).compact(table);
+
+        assertEquals(25, result.filesBefore());
+        assertEquals(3, result.filesAfter());
+        assertEquals(3, result.bins());
+        assertEquals(0, result.failedBins());
+        assertEquals(3, sparkSession.read().parquet(table).inputFiles().length);
+        assertEquals(before, sparkSession.read().parquet(table).orderBy("id", "part").collectAsList());
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            assertTrue(files.noneMatch(f -> f.getFileName().toString().startsWith("_compaction-")));
+        }
+
+        // A crash while writing the marker leaves it truncated next to its staged output
+        Path partition = tempDir.resolve("small_files").resolve("part=0");
+        sparkSession.range(10).write().parquet(partition.resolve("_compaction-staging-crashed").toString());
+        Files.writeString(partition.resolve("_compaction-crashed.pending"), "");
+        assertEquals(0, new FileCompactor(sparkSession, "parquet", 16L * 1024 * 1024, 2).compact(table).bins());
+        assertEquals(before, sparkSession.read().parquet(table).orderBy("id", "part").collectAsList());
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            assertTrue(files.noneMatch(f -> f.getFileName().toString().startsWith("_compaction-")));
+        }
+    }
+
+    @Test
+    public void testFileListingIndex(@TempDir Path tempDir) throws IOException {
+        Path table = tempDir.resolve("listed");
+        sparkSession.range(100).selectExpr("id", "id % 2 AS part").repartition(2).write().partitionBy("part").parquet(table.toString());
+
+        FileListingIndex index = new FileListingIndex(sparkSession, table.toString());
+        assertEquals(3, index.refresh());
+        assertEquals(4, index.files().size());
+        assertEquals(100, index.files().stream().mapToLong(FileListingIndex.Entry::rows).sum());
+        assertEquals(0, index.refresh());
+
+        // Loaded from disk, so nothing needs listing again
+        FileListingIndex loaded = new FileListingIndex(sparkSession, table.toString());
+        assertEquals(index.files(), loaded.files());
+        assertEquals(0, loaded.refresh());
+
+        // A new file changes its directory's mtime, which invalidates only that directory
+        Path partition = table.resolve("part=1");
+        Files.writeString(partition.resolve("extra.json"), "{\"id\": 1000}\n");
+        Files.setLastModifiedTime(partition, FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+        assertEquals(1, loaded.refresh());
+        assertEquals(5, loaded.files().size());
+        assertEquals(4, loaded.select("*.parquet", null, null).size());
+        assertEquals(100, loaded.read("parquet", "*.parquet", null, null).count());
+
+        // A corrupt index is dropped and rebuilt
+        Files.writeString(tempDir.resolve(".listed.file_index"), "X\tgarbage\n");
+        FileListingIndex rebuilt = new FileListingIndex(sparkSession, table.toString());
+        assertTrue(rebuilt.files().isEmpty());
+        assertEquals(3, rebuilt.refresh());
+        assertEquals(5, rebuilt.files().size());
+    }
+
+
+    // Never runs out of batches, and counts how often its input is closed
+    static class EndlessBatches extends ColumnarRows.BatchIterator {
+        private final LongAccumulator closed;
+        private long next;
+
+        EndlessBatches(LongAccumulator closed) {
+            this.closed = closed;
+        }
+
+        @Override
+        protected Iterator<InternalRow> nextBatch() {
+            List<InternalRow> rows = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                rows.add(new GenericInternalRow(new Object[]{next++}));
+            }
+            return rows.iterator();
+        }
+
+        @Override
+        protected void close() {
+            closed.add(1);
+        }
+    }
+
+    @Test
+    public void testBatchIteratorClosedWhenTaskStopsEarly() {
+        LongAccumulator closed = sparkSession.sparkContext().longAccumulator();
+        List<Long> first = JavaSparkContext.fromSparkContext(sparkSession.sparkContext())
+                .parallelize(List.of(1, 2, 3, 4), 4)
+                .mapPartitions(it -> new EndlessBatches(closed))
+                .map(row -> row.getLong(0))
+                .take(5);
+
+        assertEquals(List.of(0L, 1L, 2L, 3L, 4L), first);
+        // take(5) reads one partition and stops early; the task's completion closes its input
+        assertEquals(1, closed.value());
+    }
+
+
+    @Test
+    public void testCompactUserEncoder() {
+        CompactUser set = new CompactUser();
+        set.setName("Mia");
+        set.setAge(30);
+        set.setHireEpochDay((int) LocalDate.of(2024, 11, 1).toEpochDay());
+        assertTrue(set.hasAge());
+        assertTrue(set.hasHireDate());
+        CompactUser empty = new CompactUser();
+        empty.setName("Paul");
+
+        Dataset<CompactUser> users = sparkSession.createDataset(List.of(set, empty), CompactUser.encoder());
+
+        assertEquals(new StructType()
+                .add("name", DataTypes.StringType, true)
+                .add("age", DataTypes.IntegerType, true)
+                .add("hireDate", DataTypes.DateType, true), users.schema());
+        assertEquals(List.of(RowFactory.create("Mia", 30, Date.valueOf("2024-11-01")), RowFactory.create("Paul", null, null)),
+                users.toDF().collectAsList());
+        List<CompactUser> read = users.filter(col("age").isNull().or(col("age").gt(20))).collectAsList();
+        assertEquals(set.toString(), read.get(0).toString());
+        assertEquals(empty.toString(), read.get(1).toString());
+        assertFalse(read.get(1).hasAge());
+    }
+
 }